@@ -17,6 +17,7 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 import com.uos.sindhbot.api.ApiClient;
 import com.uos.sindhbot.api.ApiService;
+import com.uos.sindhbot.api.BackendWarmup;
 import com.uos.sindhbot.models.AuthRequest;
 import com.uos.sindhbot.models.AuthResponse;
 import com.uos.sindhbot.utils.AnimationUtils;
@@ -45,6 +46,8 @@ public class LoginActivity extends AppCompatActivity {
         try {
             setContentView(R.layout.activity_login);
             
+            // No-op when the splash already woke the backend
+            BackendWarmup.warmUp(this);
             initializeViews();
             setupApiService();
             setupClickListeners();
@@ -4,6 +4,8 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.text.format.DateFormat;
 import android.view.View;
 import android.widget.EditText;
@@ -24,16 +26,30 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.button.MaterialButton;
 import com.uos.sindhbot.adapters.ChatAdapter;
 import com.uos.sindhbot.adapters.ChatHistoryAdapter;
+import com.uos.sindhbot.api.AnswerStream;
 import com.uos.sindhbot.api.ApiClient;
 import com.uos.sindhbot.api.ApiService;
+import com.uos.sindhbot.api.BackendWarmup;
+import com.uos.sindhbot.api.KeepWarmScheduler;
+import com.uos.sindhbot.api.NetworkMetrics;
+import com.uos.sindhbot.api.RequestCoalescer;
 import com.uos.sindhbot.models.ApiRequest;
 import com.uos.sindhbot.models.ApiResponse;
 import com.uos.sindhbot.models.Message;
+import com.uos.sindhbot.models.TextSegment;
 import com.uos.sindhbot.utils.AnimationUtils;
+import com.uos.sindhbot.utils.AnswerCache;
 import com.uos.sindhbot.utils.ChatHistoryManager;
+import com.uos.sindhbot.utils.ChatPersistence;
 import com.uos.sindhbot.utils.CustomSnackbar;
+import com.uos.sindhbot.utils.FaqMatcher;
+import com.uos.sindhbot.utils.IncrementalLanguageDetector;
 import com.uos.sindhbot.utils.LanguageDetector;
+import com.uos.sindhbot.utils.QuestionOutbox;
+import com.uos.sindhbot.utils.SpeechPlayer;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
@@ -66,10 +82,47 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
     private RecyclerView recyclerViewHistory;
     private ChatHistoryAdapter historyAdapter;
     private TextView textViewNoHistory;
+    private EditText editTextSearchHistory;
+    private volatile String historyQuery = "";
+    private final Runnable historySearch = new Runnable() {
+        @Override
+        public void run() {
+            refreshHistoryList();
+        }
+    };
     private TextToSpeech textToSpeech;
+    private SpeechPlayer speechPlayer;
+    private boolean autoRead;
+    // Answer currently streaming in, so tapping speak on it can follow the stream
+    private Message streamingMessage;
+    private CharSequence streamingAnswer;
+    private KeepWarmScheduler keepWarmScheduler;
     private String currentSessionId;
     private ImageButton buttonSettings;
     private boolean isDarkTheme = true; // Default to dark theme
+    private FaqMatcher faqMatcher;
+    private ChatPersistence chatPersistence;
+    private final Runnable historySavedListener = new Runnable() {
+        @Override
+        public void run() {
+            refreshHistoryList();
+        }
+    };
+    private AnswerCache answerCache;
+    private QuestionOutbox questionOutbox;
+    private final QuestionOutbox.OnAnswerListener outboxAnswerListener = new QuestionOutbox.OnAnswerListener() {
+        @Override
+        public void onAnswer(long entryId, String sessionId, long messageId, String answer) {
+            showQueuedAnswer(entryId, messageId, answer);
+        }
+        
+        @Override
+        public void onFailed(long entryId, String sessionId, long messageId, String text, String error) {
+            showQueuedFailure(entryId, messageId, text, error);
+        }
+    };
+    private TextView textViewDetectedLanguage;
+    private final IncrementalLanguageDetector inputLanguageDetector = new IncrementalLanguageDetector();
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -84,11 +137,15 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
             initializeViews();
             setupRecyclerView();
             setupSendButton();
+            setupLanguageDetection();
             setupNewChatButton();
             setupSettingsButton();
             
             // Initialize TextToSpeech
             textToSpeech = new TextToSpeech(this, this);
+            speechPlayer = new SpeechPlayer(this, textToSpeech);
+            autoRead = getSharedPreferences("AppPrefs", MODE_PRIVATE).getBoolean("autoRead", false);
+            keepWarmScheduler = new KeepWarmScheduler(this);
             
             // Defer non-critical setup to avoid blocking
             recyclerViewChat.post(new Runnable() {
@@ -115,12 +172,17 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
                     currentSessionId = chatHistoryManager.getCurrentSessionId();
                     
                     List<Message> savedMessages = chatHistoryManager.loadCurrentChat();
-                    List<ChatHistoryManager.ChatSession> history = chatHistoryManager.getChatHistory();
+                    // Questions answered from the outbox while the app was closed
+                    boolean answersArrived = savedMessages != null && questionOutbox.applyDeliveredAnswers(savedMessages);
+                    List<ChatHistoryManager.ChatSession> history = chatHistoryManager.getSessionIndex();
+                    FaqMatcher matcher = FaqMatcher.getInstance(MainActivity.this);
                     
                     // Update UI on main thread
                     runOnUiThread(new Runnable() {
                         @Override
                         public void run() {
+                            faqMatcher = matcher;
+                            
                             // Initialize messages if needed
                             if (messages == null) {
                                 messages = new ArrayList<>();
@@ -137,7 +199,10 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
                                 messages.clear();
                                 messages.addAll(savedMessages);
                                 if (chatAdapter != null) {
-                                    chatAdapter.notifyDataSetChanged();
+                                    chatAdapter.submitList(messages);
+                                }
+                                if (answersArrived) {
+                                    saveChat();
                                 }
                                 initializeAdapterListener();
                                 recyclerViewChat.postDelayed(new Runnable() {
@@ -150,8 +215,8 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
                                 addWelcomeMessage();
                             }
                             
-                            // Refresh history list
-                            refreshHistoryList();
+                            // Show history list
+                            showHistoryList(history);
                         }
                     });
                 }
@@ -175,7 +240,14 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
             buttonSettings = findViewById(R.id.buttonSettings);
             recyclerViewHistory = findViewById(R.id.recyclerViewHistory);
             textViewNoHistory = findViewById(R.id.textViewNoHistory);
+            editTextSearchHistory = findViewById(R.id.editTextSearchHistory);
+            textViewDetectedLanguage = findViewById(R.id.textViewDetectedLanguage);
             chatHistoryManager = new ChatHistoryManager(this);
+            chatPersistence = ChatPersistence.getInstance(this);
+            chatPersistence.setOnHistorySavedListener(historySavedListener);
+            questionOutbox = QuestionOutbox.getInstance(this);
+            questionOutbox.setOnAnswerListener(outboxAnswerListener);
+            answerCache = AnswerCache.getInstance(this);
         } catch (Exception e) {
             e.printStackTrace();
             // Don't throw - just log the error and continue with null views
@@ -281,40 +353,102 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
             historyAdapter = new ChatHistoryAdapter(new ArrayList<>(), new ChatHistoryAdapter.OnHistoryItemClickListener() {
                 @Override
                 public void onHistoryItemClick(ChatHistoryManager.ChatSession session) {
-                    // Load selected chat
-                    if (session.messages != null && !session.messages.isEmpty()) {
-                        messages.clear();
-                        messages.addAll(session.messages);
-                        messages.addAll(session.messages);
-                        chatAdapter.notifyDataSetChanged();
-                        
-                        // Set current session ID
-                        currentSessionId = session.id;
-                        chatHistoryManager.saveCurrentSessionId(currentSessionId);
-                        saveChat(); // Save as current chat so it persists on restart
-                        
-                        scrollToBottom();
-                        if (drawerLayout != null) {
-                            drawerLayout.closeDrawer(GravityCompat.START);
+                    // Load selected chat; the drawer only has metadata, so fetch its messages now
+                    loadHistorySession(session.id, new Runnable() {
+                        @Override
+                        public void run() {
+                            // Set current session ID
+                            currentSessionId = session.id;
+                            chatHistoryManager.saveCurrentSessionId(currentSessionId);
+                            saveChat(); // Save as current chat so it persists on restart
+                            
+                            if (drawerLayout != null) {
+                                drawerLayout.closeDrawer(GravityCompat.START);
+                            }
                         }
-                        CustomSnackbar.showSuccess(findViewById(android.R.id.content), "Chat loaded successfully");
-                    }
+                    });
                 }
             });
             recyclerViewHistory.setAdapter(historyAdapter);
+            
+            if (editTextSearchHistory != null) {
+                editTextSearchHistory.addTextChangedListener(new TextWatcher() {
+                    @Override
+                    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                    }
+                    
+                    @Override
+                    public void onTextChanged(CharSequence s, int start, int before, int count) {
+                    }
+                    
+                    @Override
+                    public void afterTextChanged(Editable s) {
+                        // Search once typing pauses
+                        historyQuery = s.toString();
+                        recyclerViewHistory.removeCallbacks(historySearch);
+                        recyclerViewHistory.postDelayed(historySearch, 250);
+                    }
+                });
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
     
+    private void loadHistorySession(String sessionId, Runnable onLoaded) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                List<Message> sessionMessages = chatHistoryManager.loadSessionMessages(sessionId);
+                // The stored session already has them, this clears the outbox entries
+                questionOutbox.applyDeliveredAnswers(sessionMessages);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (sessionMessages.isEmpty()) {
+                            return;
+                        }
+                        messages.clear();
+                        messages.addAll(sessionMessages);
+                        chatAdapter.submitList(messages, MainActivity.this::scrollToBottom);
+                        if (onLoaded != null) {
+                            onLoaded.run();
+                        }
+                        CustomSnackbar.showSuccess(findViewById(android.R.id.content), "Chat loaded successfully");
+                    }
+                });
+            }
+        }).start();
+    }
+    
     private void refreshHistoryList() {
-        try {
-            if (chatHistoryManager == null) {
-                chatHistoryManager = new ChatHistoryManager(this);
+        if (chatHistoryManager == null) {
+            chatHistoryManager = new ChatHistoryManager(this);
+        }
+        // Only the session index is read, so this stays cheap however long the chats are
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    String query = historyQuery;
+                    List<ChatHistoryManager.ChatSession> history = query.trim().isEmpty()
+                            ? chatHistoryManager.getSessionIndex()
+                            : chatHistoryManager.searchSessions(query);
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            showHistoryList(history);
+                        }
+                    });
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
             }
-            
-            // Load and display history (this is fast, can run on UI thread)
-            List<ChatHistoryManager.ChatSession> history = chatHistoryManager.getChatHistory();
+        }).start();
+    }
+    
+    private void showHistoryList(List<ChatHistoryManager.ChatSession> history) {
+        try {
             if (historyAdapter != null) {
                 historyAdapter.updateHistory(history);
             }
@@ -333,51 +467,16 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
     }
     
     private void saveCurrentChatToHistory() {
-        // Save current chat to history asynchronously
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    if (chatHistoryManager == null) {
-                        chatHistoryManager = new ChatHistoryManager(MainActivity.this);
-                    }
-                    
-                    // Get all user prompts from current chat
-                    List<Message> userMessages = new ArrayList<>();
-                    if (messages != null) {
-                        for (Message msg : messages) {
-                            if (msg.isUser()) {
-                                userMessages.add(msg);
-                            }
-                        }
-                    }
-                    
-                    // Save current chat to history if it has messages
-                    if (!userMessages.isEmpty() && messages.size() > 1) {
-                        String firstPrompt = userMessages.get(0).getText();
-                        String title = firstPrompt.length() > 40 ? firstPrompt.substring(0, 40) + "..." : firstPrompt;
-                        
-                        // Generate ID if needed
-                        if (currentSessionId == null) {
-                            currentSessionId = UUID.randomUUID().toString();
-                            chatHistoryManager.saveCurrentSessionId(currentSessionId);
-                        }
-                        
-                        chatHistoryManager.saveToHistory(messages, title, currentSessionId);
-                        
-                        // Refresh history list on UI thread
-                        runOnUiThread(new Runnable() {
-                            @Override
-                            public void run() {
-                                refreshHistoryList();
-                            }
-                        });
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-        }).start();
+        if (messages == null) {
+            return;
+        }
+        // Generate ID if needed (on the main thread, so every save of this chat agrees on it)
+        if (currentSessionId == null) {
+            currentSessionId = UUID.randomUUID().toString();
+            chatHistoryManager.saveCurrentSessionId(currentSessionId);
+        }
+        // Coalesced with other saves and written on the persistence thread
+        chatPersistence.saveToHistory(messages, currentSessionId);
     }
     
     private void setupChatHistory() {
@@ -408,7 +507,7 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
                 messages.addAll(savedMessages);
                 // Notify adapter
                 if (chatAdapter != null) {
-                    chatAdapter.notifyDataSetChanged();
+                    chatAdapter.submitList(messages);
                 }
                 // Scroll to bottom after a short delay to ensure layout is ready
                 recyclerViewChat.postDelayed(new Runnable() {
@@ -444,8 +543,7 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
             String timestamp = getCurrentTimestamp();
             Message welcomeMessage = new Message(welcomeText, false, timestamp);
             messages.add(welcomeMessage);
-            chatAdapter.notifyItemInserted(messages.size() - 1);
-            scrollToBottom();
+            chatAdapter.submitList(messages, this::scrollToBottom);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -470,11 +568,11 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
     
     private void startNewChat() {
         messages.clear();
-        chatAdapter.notifyDataSetChanged();
+        chatAdapter.submitList(messages);
         
         // Reset session
         currentSessionId = null;
-        chatHistoryManager.clearCurrentChat();
+        chatPersistence.clearCurrentChat();
         
         addWelcomeMessage();
         
@@ -508,6 +606,10 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
         if (themeItem != null) {
             themeItem.setTitle(isDarkTheme ? "Theme: Dark" : "Theme: Light");
         }
+        MenuItem autoReadItem = popup.getMenu().findItem(R.id.menu_auto_read);
+        if (autoReadItem != null) {
+            autoReadItem.setChecked(autoRead);
+        }
         
         popup.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
             @Override
@@ -516,6 +618,9 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
                 if (id == R.id.menu_theme) {
                     toggleTheme();
                     return true;
+                } else if (id == R.id.menu_auto_read) {
+                    toggleAutoRead();
+                    return true;
                 } else if (id == R.id.menu_logout) {
                     logout();
                     return true;
@@ -546,6 +651,15 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
         recreate();
     }
     
+    private void toggleAutoRead() {
+        autoRead = !autoRead;
+        SharedPreferences prefs = getSharedPreferences("AppPrefs", MODE_PRIVATE);
+        prefs.edit().putBoolean("autoRead", autoRead).apply();
+        if (!autoRead && speechPlayer != null) {
+            speechPlayer.stop();
+        }
+    }
+    
     private void applyTheme() {
         if (isDarkTheme) {
             setTheme(R.style.Theme_UoSBot_Dark);
@@ -577,12 +691,62 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
         }
     }
     
+    private void setupLanguageDetection() {
+        if (editTextMessage == null) {
+            return;
+        }
+        // Counters are updated per edit, sendMessage() reads the result instead of rescanning
+        inputLanguageDetector.setOnLanguageChangedListener(new IncrementalLanguageDetector.OnLanguageChangedListener() {
+            @Override
+            public void onLanguageChanged(String language) {
+                // Clearing the field after sending keeps the last voice for reading the answer
+                if (!inputLanguageDetector.isEmpty()) {
+                    preselectSpeechLocale(language);
+                }
+            }
+        });
+        editTextMessage.addTextChangedListener(inputLanguageDetector);
+        editTextMessage.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+            
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+            
+            @Override
+            public void afterTextChanged(Editable s) {
+                showDetectedLanguage();
+            }
+        });
+    }
+    
+    private void showDetectedLanguage() {
+        if (textViewDetectedLanguage == null) {
+            return;
+        }
+        if (inputLanguageDetector.isEmpty()) {
+            textViewDetectedLanguage.setVisibility(View.GONE);
+            return;
+        }
+        String name = LanguageDetector.getLanguageName(inputLanguageDetector.peekLanguage());
+        textViewDetectedLanguage.setText(getString(R.string.detected_language, name));
+        textViewDetectedLanguage.setVisibility(View.VISIBLE);
+    }
+    
+    private void preselectSpeechLocale(String language) {
+        if (speechPlayer != null) {
+            speechPlayer.selectLanguage(language);
+        }
+    }
+    
     private void initializeAdapterListener() {
         if (chatAdapter != null) {
             chatAdapter.setOnMessageClickListener(new ChatAdapter.OnMessageClickListener() {
                 @Override
-                public void onSpeakClick(String text) {
-                    speak(text);
+                public void onSpeakClick(Message message) {
+                    speak(message);
                 }
             });
         }
@@ -595,15 +759,27 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
             if (result == TextToSpeech.LANG_MISSING_DATA || result == TextToSpeech.LANG_NOT_SUPPORTED) {
                 Toast.makeText(this, "TTS Language not supported", Toast.LENGTH_SHORT).show();
             }
+            speechPlayer.setReady(true);
+            if (!inputLanguageDetector.isEmpty()) {
+                preselectSpeechLocale(inputLanguageDetector.peekLanguage());
+            }
         } else {
             Toast.makeText(this, "TTS Initialization failed", Toast.LENGTH_SHORT).show();
         }
     }
 
-    private void speak(String text) {
-        if (textToSpeech != null) {
-            textToSpeech.speak(text, TextToSpeech.QUEUE_FLUSH, null, null);
+    private void speak(Message message) {
+        if (speechPlayer == null || message == null) {
+            return;
+        }
+        if (message == streamingMessage) {
+            // Still arriving: read what is there and keep up with the stream from onDelta
+            speechPlayer.startStream(message);
+            speechPlayer.appendStream(streamingAnswer);
+            return;
         }
+        // Sentence by sentence, from the synthesis cache when this answer was spoken before
+        speechPlayer.speak(message);
     }
     
     private void setupProfile() {
@@ -653,15 +829,27 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
             return;
         }
         
-        editTextMessage.setText("");
+        // Read before clearing the field, which resets the detector
+        String detectedLanguage = inputLanguageDetector.getLanguage();
         
-        String detectedLanguage = LanguageDetector.detectLanguage(messageText);
+        editTextMessage.setText("");
         
         String timestamp = getCurrentTimestamp();
         Message userMessage = new Message(messageText, true, timestamp, detectedLanguage);
         messages.add(userMessage);
-        chatAdapter.notifyItemInserted(messages.size() - 1);
-        scrollToBottom();
+        chatAdapter.submitList(messages, this::scrollToBottom);
+        
+        // Answer FAQs on-device; only English answers are bundled, other languages still need the backend's translation
+        FaqMatcher.Faq faq = faqMatcher != null && "en".equals(detectedLanguage) ? faqMatcher.match(messageText) : null;
+        if (faq != null) {
+            Message botMessage = new Message(faq.answer, false, getCurrentTimestamp(), detectedLanguage);
+            messages.add(botMessage);
+            chatAdapter.submitList(messages, this::scrollToBottom);
+            
+            saveChat();
+            saveCurrentChatToHistory();
+            return;
+        }
         
         // Save chat after adding user message
         saveChat();
@@ -669,32 +857,182 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
         // Save to history asynchronously
         saveCurrentChatToHistory();
         
-        Message loadingMessage = new Message(getString(R.string.loading), false, getCurrentTimestamp());
+        // Carries the question's language from the start, the answer will be in it too
+        Message loadingMessage = new Message(getString(R.string.loading), false, getCurrentTimestamp(), detectedLanguage);
         messages.add(loadingMessage);
-        int loadingPosition = messages.size() - 1;
-        chatAdapter.notifyItemInserted(loadingPosition);
-        scrollToBottom();
+        chatAdapter.submitList(messages, this::scrollToBottom);
         
         ApiRequest request = new ApiRequest(messageText, detectedLanguage);
-        Call<ApiResponse> call = apiService.askQuestion(request);
-        
-        call.enqueue(new Callback<ApiResponse>() {
+        if (!"en".equals(detectedLanguage)) {
+            // Mixed-script questions tell the backend which spans are already English
+            List<TextSegment> segments = LanguageDetector.segment(messageText, detectedLanguage);
+            if (segments.size() > 1) {
+                request.setSegments(segments);
+            }
+        }
+        answerCache.lookup(messageText, detectedLanguage, new AnswerCache.Callback() {
+            @Override
+            public void onResult(ApiResponse cached, boolean stale) {
+                if (cached == null) {
+                    streamAnswer(request, loadingMessage, detectedLanguage);
+                    return;
+                }
+                int position = messages.indexOf(loadingMessage);
+                if (position == -1) {
+                    return;
+                }
+                loadingMessage.setLanguage(detectedLanguage);
+                chatAdapter.updateMessageText(loadingMessage, formatAnswer(cached));
+                if (autoRead) {
+                    speak(loadingMessage);
+                }
+                saveChat();
+                saveCurrentChatToHistory();
+                
+                if (stale) {
+                    revalidateCachedAnswer(request);
+                }
+            }
+        });
+    }
+    
+    private void revalidateCachedAnswer(ApiRequest request) {
+        // Refresh the cache only; the answer on screen stays as it is
+        ApiClient.askQuestion(request, new Callback<ApiResponse>() {
             @Override
             public void onResponse(Call<ApiResponse> call, Response<ApiResponse> response) {
+                if (response.isSuccessful() && response.body() != null) {
+                    answerCache.put(request.getQuestion(), request.getLanguage(), response.body());
+                }
+            }
+            
+            @Override
+            public void onFailure(Call<ApiResponse> call, Throwable t) {
+                t.printStackTrace();
+            }
+        });
+    }
+    
+    private String formatAnswer(ApiResponse apiResponse) {
+        return apiResponse.getAnswerWithSource();
+    }
+    
+    private void streamAnswer(ApiRequest request, Message botMessage, String detectedLanguage) {
+        // The loading row becomes the bot message and grows as text arrives
+        StringBuilder answer = new StringBuilder();
+        streamingMessage = botMessage;
+        streamingAnswer = answer;
+        ApiClient.streamAnswer(request, new AnswerStream.Listener() {
+            @Override
+            public void onDelta(String delta) {
+                int position = messages.indexOf(botMessage);
+                if (position == -1) {
+                    return;
+                }
+                boolean firstDelta = answer.length() == 0;
+                answer.append(delta);
+                botMessage.setLanguage(detectedLanguage);
+                chatAdapter.updateMessageText(botMessage, answer.toString(), false);
+                if (firstDelta) {
+                    scrollToBottom();
+                    if (autoRead && speechPlayer != null) {
+                        speechPlayer.startStream(botMessage);
+                    }
+                }
+                if (speechPlayer != null && speechPlayer.isStreaming(botMessage)) {
+                    // Each sentence is synthesized as soon as its end arrives
+                    speechPlayer.appendStream(answer);
+                }
+            }
+            
+            @Override
+            public void onComplete(ApiResponse apiResponse) {
+                endStream(botMessage, apiResponse.isSuccess() ? formatAnswer(apiResponse) : null);
+                int position = messages.indexOf(botMessage);
+                if (position == -1) {
+                    return;
+                }
+                if (apiResponse.isSuccess()) {
+                    answerCache.put(request.getQuestion(), request.getLanguage(), apiResponse);
+                    chatAdapter.updateMessageText(botMessage, formatAnswer(apiResponse));
+                    
+                    // Save chat after bot response
+                    saveChat();
+                    
+                    // Save to history asynchronously
+                    saveCurrentChatToHistory();
+                } else {
+                    messages.remove(position);
+                    chatAdapter.submitList(messages);
+                    showError(apiResponse.getError() != null ? apiResponse.getError() : getString(R.string.error_generic));
+                }
+            }
+            
+            @Override
+            public void onUnavailable() {
+                endStream(botMessage, null);
+                // Backend without the streaming endpoint, fall back to the blocking call
+                fetchAnswer(request, botMessage, detectedLanguage);
+            }
+            
+            @Override
+            public void onFailure(Throwable t) {
+                endStream(botMessage, answer.length() > 0 ? answer : null);
+                int position = messages.indexOf(botMessage);
+                if (position == -1) {
+                    return;
+                }
+                if (answer.length() > 0) {
+                    // Keep the partial answer the user has already been reading
+                    saveChat();
+                    saveCurrentChatToHistory();
+                    CustomSnackbar.showError(findViewById(android.R.id.content), getString(R.string.error_network));
+                } else {
+                    queueForRetry(request, botMessage);
+                }
+                t.printStackTrace();
+            }
+        });
+    }
+    
+    // Lets speech finish the answer's last sentence, or stops it when there is no answer to read
+    private void endStream(Message botMessage, CharSequence finalText) {
+        if (streamingMessage == botMessage) {
+            streamingMessage = null;
+            streamingAnswer = null;
+        }
+        if (speechPlayer == null || !speechPlayer.isStreaming(botMessage)) {
+            return;
+        }
+        if (finalText != null) {
+            speechPlayer.finishStream(finalText);
+        } else {
+            speechPlayer.stop();
+        }
+    }
+    
+    private void fetchAnswer(ApiRequest request, Message loadingMessage, String detectedLanguage) {
+        // A resent question waiting on the same answer shares its call
+        ApiClient.askQuestion(request, new Callback<ApiResponse>() {
+            @Override
+            public void onResponse(Call<ApiResponse> call, Response<ApiResponse> response) {
+                int loadingPosition = messages.indexOf(loadingMessage);
+                if (loadingPosition == -1) {
+                    return;
+                }
                 messages.remove(loadingPosition);
-                chatAdapter.notifyItemRemoved(loadingPosition);
+                chatAdapter.submitList(messages);
                 
                 if (response.isSuccessful() && response.body() != null) {
                     ApiResponse apiResponse = response.body();
                     if (apiResponse.isSuccess()) {
-                        String answer = apiResponse.getAnswer();
-                        if (apiResponse.getSource() != null && !apiResponse.getSource().isEmpty()) {
-                            answer += "\n\nSource: " + apiResponse.getSource();
-                        }
-                        Message botMessage = new Message(answer, false, getCurrentTimestamp(), detectedLanguage);
+                        answerCache.put(request.getQuestion(), request.getLanguage(), apiResponse);
+                        Message botMessage = new Message(formatAnswer(apiResponse), false, getCurrentTimestamp(), detectedLanguage);
                         messages.add(botMessage);
-                        chatAdapter.notifyItemInserted(messages.size() - 1);
-                        scrollToBottom();
+                        chatAdapter.submitList(messages, MainActivity.this::scrollToBottom);
+                        if (autoRead) {
+                            speak(botMessage);
+                        }
                         
                         // Save chat after bot response
                         saveChat();
@@ -711,37 +1049,75 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
             
             @Override
             public void onFailure(Call<ApiResponse> call, Throwable t) {
-                messages.remove(loadingPosition);
-                chatAdapter.notifyItemRemoved(loadingPosition);
-                
-                showError(getString(R.string.error_network));
+                if (messages.indexOf(loadingMessage) == -1) {
+                    return;
+                }
+                queueForRetry(request, loadingMessage);
                 t.printStackTrace();
             }
         });
     }
     
+    // The question is kept instead of lost: the loading row waits for the outbox to answer it
+    private void queueForRetry(ApiRequest request, Message loadingMessage) {
+        chatAdapter.updateMessageText(loadingMessage, getString(R.string.queued_offline));
+        saveChat();
+        // Also assigns the session id the outbox files the answer under
+        saveCurrentChatToHistory();
+        questionOutbox.enqueue(request, currentSessionId, loadingMessage.getId());
+    }
+    
+    private void showQueuedAnswer(long entryId, long messageId, String answer) {
+        if (messages == null) {
+            return;
+        }
+        for (Message message : messages) {
+            if (message.getId() == messageId) {
+                chatAdapter.updateMessageText(message, answer);
+                saveChat();
+                saveCurrentChatToHistory();
+                questionOutbox.acknowledge(entryId);
+                if (autoRead) {
+                    speak(message);
+                }
+                return;
+            }
+        }
+        // Another chat is open; the answer is already in its stored session
+    }
+    
+    private void showQueuedFailure(long entryId, long messageId, String text, String error) {
+        if (messages == null) {
+            return;
+        }
+        for (Message message : messages) {
+            if (message.getId() == messageId) {
+                chatAdapter.updateMessageText(message, text);
+                saveChat();
+                saveCurrentChatToHistory();
+                questionOutbox.acknowledge(entryId);
+                CustomSnackbar.showError(findViewById(android.R.id.content), error);
+                return;
+            }
+        }
+        // Another chat is open; its stored session already has the note
+    }
+    
     private void saveChat() {
-        // Save current chat
-        chatHistoryManager.saveCurrentChat(messages);
+        // Save current chat (coalesced with other saves and written on the persistence thread)
+        if (messages != null) {
+            chatPersistence.saveCurrentChat(messages);
+        }
     }
     
     private void scrollToBottom() {
         recyclerViewChat.post(new Runnable() {
             @Override
             public void run() {
-                if (messages.size() > 0) {
-                    int position = messages.size() - 1;
+                if (chatAdapter.getItemCount() > 0) {
+                    int position = chatAdapter.getItemCount() - 1;
+                    // New rows run their own entry animation in ChatAdapter
                     recyclerViewChat.smoothScrollToPosition(position);
-                    View view = recyclerViewChat.getLayoutManager().findViewByPosition(position);
-                    if (view != null) {
-                        view.setAlpha(0f);
-                        view.setTranslationY(20f);
-                        view.animate()
-                                .alpha(1f)
-                                .translationY(0f)
-                                .setDuration(300)
-                                .start();
-                    }
                 }
             }
         });
@@ -756,15 +1132,14 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
         CustomSnackbar.showError(findViewById(android.R.id.content), errorMessage);
         Message errorMessageObj = new Message("Sorry, I couldn't process your request. " + errorMessage, false, getCurrentTimestamp());
         messages.add(errorMessageObj);
-        chatAdapter.notifyItemInserted(messages.size() - 1);
-        scrollToBottom();
+        chatAdapter.submitList(messages, this::scrollToBottom);
     }
     
     
     private void clearChat() {
         messages.clear();
-        chatHistoryManager.clearCurrentChat();
-        chatAdapter.notifyDataSetChanged();
+        chatPersistence.clearCurrentChat();
+        chatAdapter.submitList(messages);
         addWelcomeMessage();
         // Refresh history list asynchronously
         new Thread(new Runnable() {
@@ -781,7 +1156,7 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
     }
     
     private void showChatHistory() {
-        List<ChatHistoryManager.ChatSession> history = chatHistoryManager.getChatHistory();
+        List<ChatHistoryManager.ChatSession> history = chatHistoryManager.getSessionIndex();
         if (history.isEmpty()) {
             android.app.AlertDialog.Builder builder = new android.app.AlertDialog.Builder(this);
             builder.setTitle("Chat History");
@@ -841,8 +1216,8 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
         builder.setTitle("Clear History");
         builder.setMessage("Are you sure you want to delete all chat history?");
         builder.setPositiveButton("Yes", (dialog, which) -> {
-            chatHistoryManager.clearAllHistory();
-            refreshHistoryList();
+            chatPersistence.clearAllHistory();
+            showHistoryList(new ArrayList<>());
             Toast.makeText(this, "History cleared", Toast.LENGTH_SHORT).show();
         });
         builder.setNegativeButton("No", null);
@@ -891,13 +1266,7 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
         builder.setItems(chatTitles, (dialog, which) -> {
             // Load selected chat
             ChatHistoryManager.ChatSession selectedSession = history.get(which);
-            if (selectedSession.messages != null && !selectedSession.messages.isEmpty()) {
-                messages.clear();
-                messages.addAll(selectedSession.messages);
-                chatAdapter.notifyDataSetChanged();
-                scrollToBottom();
-                CustomSnackbar.showSuccess(findViewById(android.R.id.content), "Chat loaded successfully");
-            }
+            loadHistorySession(selectedSession.id, null);
         });
         
         builder.setNegativeButton("Close", null);
@@ -929,24 +1298,54 @@ public class MainActivity extends AppCompatActivity implements TextToSpeech.OnIn
         }
     }
     
+    // adb shell dumpsys activity com.uos.sindhbot/.MainActivity
+    @Override
+    public void dump(@NonNull String prefix, FileDescriptor fd, @NonNull PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        if (!BuildConfig.DEBUG) {
+            return;
+        }
+        writer.println(prefix + "Network latency:");
+        writer.println(NetworkMetrics.dump());
+        writer.println(prefix + "Last warmup: " + BackendWarmup.getLastReadyMillis() + " ms, cold starts avoided: "
+                + KeepWarmScheduler.getAvoidedColdStarts());
+        writer.println(prefix + "Questions: " + RequestCoalescer.getRequestCount() + ", coalesced: "
+                + RequestCoalescer.getSavedCallCount());
+    }
+    
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Heartbeats only while the chat is on screen
+        if (keepWarmScheduler != null) {
+            keepWarmScheduler.start();
+        }
+    }
+    
     @Override
     protected void onPause() {
         super.onPause();
-        if (textToSpeech != null) {
-            textToSpeech.stop();
+        if (keepWarmScheduler != null) {
+            keepWarmScheduler.stop();
+        }
+        if (speechPlayer != null) {
+            speechPlayer.stop();
         }
-        // Save chat when app goes to background
+        // Save chat when app goes to background, without waiting for the debounce window
         saveChat();
+        chatPersistence.flush();
     }
     
     @Override
     protected void onDestroy() {
-        if (textToSpeech != null) {
-            textToSpeech.stop();
-            textToSpeech.shutdown();
+        if (speechPlayer != null) {
+            speechPlayer.shutdown();
         }
         super.onDestroy();
         // Save chat before destroying
         saveChat();
+        chatPersistence.flush();
+        chatPersistence.removeOnHistorySavedListener(historySavedListener);
+        questionOutbox.removeOnAnswerListener(outboxAnswerListener);
     }
 }
@@ -12,6 +12,8 @@ import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.uos.sindhbot.api.BackendWarmup;
+
 public class SplashActivity extends AppCompatActivity {
     
     private static final int SPLASH_DURATION = 1500; // Reduced to 1.5 seconds
@@ -22,6 +24,8 @@ public class SplashActivity extends AppCompatActivity {
         loadTheme();
         
         super.onCreate(savedInstanceState);
+        // Wake the backend while the splash is showing, it can take a while after idling
+        BackendWarmup.warmUp(this);
         setContentView(R.layout.activity_splash);
         
         // Start navigation check immediately in background
@@ -3,6 +3,10 @@ package com.uos.sindhbot.adapters;
 import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LongSparseArray;
+import android.util.LruCache;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -14,62 +18,173 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.uos.sindhbot.R;
 import com.uos.sindhbot.models.Message;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ChatAdapter extends RecyclerView.Adapter<ChatAdapter.MessageViewHolder> {
     
-    private List<Message> messages;
+    private static final int VIEW_TYPE_USER = 0;
+    private static final int VIEW_TYPE_BOT = 1;
+    
+    // Payload for in-place text changes (streamed answers), rebinds only the message text
+    private static final Object PAYLOAD_TEXT = new Object();
+    
+    // Larger inserts are whole conversations being loaded, not new messages arriving
+    private static final int MAX_ANIMATED_INSERT = 3;
+    
+    private static final int PRECOMPUTED_CACHE_SIZE = 100;
+    // How many answers are laid out ahead at once (a loaded conversation, or around the row
+    // on screen when the params change); the rest are laid out as they are scrolled to.
+    // Well below the cache size, so ahead-of-time work isn't evicted before it is shown
+    private static final int PRECOMPUTE_WINDOW = 20;
+    // Measuring and shaping long Urdu/Sindhi answers happens here instead of during scroll
+    private static final ExecutorService PRECOMPUTE_EXECUTOR = Executors.newSingleThreadExecutor();
+    
+    private static final DiffUtil.ItemCallback<Message> DIFF_CALLBACK = new DiffUtil.ItemCallback<Message>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Message oldItem, @NonNull Message newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+        
+        @Override
+        public boolean areContentsTheSame(@NonNull Message oldItem, @NonNull Message newItem) {
+            return oldItem.isUser() == newItem.isUser()
+                    && equal(oldItem.getText(), newItem.getText())
+                    && equal(oldItem.getTimestamp(), newItem.getTimestamp());
+        }
+        
+        @Override
+        public Object getChangePayload(@NonNull Message oldItem, @NonNull Message newItem) {
+            if (oldItem.isUser() == newItem.isUser() && equal(oldItem.getTimestamp(), newItem.getTimestamp())) {
+                return PAYLOAD_TEXT;
+            }
+            return null;
+        }
+    };
+    
+    // Diffs are computed on a background thread and only changed rows are rebound
+    private final AsyncListDiffer<Message> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    
+    // Ids of inserted messages that haven't been shown yet -> entry animation delay
+    private final LongSparseArray<Integer> pendingAnimations = new LongSparseArray<>();
+    
+    // Bot message id -> text laid out on PRECOMPUTE_EXECUTOR
+    private final LruCache<Long, PrecomputedEntry> precomputed = new LruCache<>(PRECOMPUTED_CACHE_SIZE);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Taken from an attached bot message view (text direction is only resolved once the
+    // view is attached), all of them share the same text appearance
+    private PrecomputedTextCompat.Params botTextParams;
+    
+    // Resolved on the first onCreateViewHolder
+    private boolean colorsResolved;
+    private int userTextColor;
+    private int botTextColor;
+    private int botTimeColor;
     
     public ChatAdapter(List<Message> messages) {
-        this.messages = messages;
+        setHasStableIds(true);
+        registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                List<Message> current = differ.getCurrentList();
+                // Only messages appended to the end of the conversation get the entry animation
+                if (positionStart + itemCount != current.size() || itemCount > MAX_ANIMATED_INSERT) {
+                    return;
+                }
+                for (int i = 0; i < itemCount; i++) {
+                    pendingAnimations.put(current.get(positionStart + i).getId(), Math.min(i * 30, 300));
+                }
+            }
+        });
+        differ.addListListener(new AsyncListDiffer.ListListener<Message>() {
+            @Override
+            public void onCurrentListChanged(@NonNull List<Message> previousList, @NonNull List<Message> currentList) {
+                prunePendingAnimations(previousList, currentList);
+                precomputeChangedMessages(previousList, currentList);
+            }
+        });
+        submitList(messages);
+    }
+    
+    // Show the given messages; the list is copied, so the caller may keep mutating its own
+    public void submitList(List<Message> messages) {
+        submitList(messages, null);
+    }
+    
+    public void submitList(List<Message> messages, Runnable commitCallback) {
+        differ.submitList(new ArrayList<>(messages), commitCallback);
     }
     
-    @NonNull
     @Override
-    public MessageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(parent.getContext())
-                .inflate(R.layout.item_message, parent, false);
-        return new MessageViewHolder(view);
+    public int getItemViewType(int position) {
+        return differ.getCurrentList().get(position).isUser() ? VIEW_TYPE_USER : VIEW_TYPE_BOT;
     }
     
+    @NonNull
     @Override
-    public void onBindViewHolder(@NonNull MessageViewHolder holder, int position) {
-        Message message = messages.get(position);
+    public MessageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        Context context = parent.getContext();
+        if (!colorsResolved) {
+            userTextColor = ContextCompat.getColor(context, R.color.white);
+            botTextColor = ContextCompat.getColor(context, R.color.uos_text_primary);
+            botTimeColor = ContextCompat.getColor(context, R.color.uos_text_secondary);
+            colorsResolved = true;
+        }
         
-        holder.textViewMessage.setText(message.getText());
-        holder.textViewTime.setText(message.getTimestamp());
+        View view = LayoutInflater.from(context).inflate(R.layout.item_message, parent, false);
+        MessageViewHolder holder = new MessageViewHolder(view);
         
-        // Get the root LinearLayout from itemView
+        // Everything that only depends on the view type is set up once here instead of on every bind
         LinearLayout rootLayout = (LinearLayout) holder.itemView;
         LinearLayout.LayoutParams messageParams = (LinearLayout.LayoutParams) holder.layoutMessage.getLayoutParams();
-        
-        if (message.isUser()) {
+        if (viewType == VIEW_TYPE_USER) {
             holder.layoutMessage.setBackgroundResource(R.drawable.message_user_background);
             // User messages: white text on cyan background
-            holder.textViewMessage.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.white));
-            holder.textViewTime.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.white));
+            holder.textViewMessage.setTextColor(userTextColor);
+            holder.textViewTime.setTextColor(userTextColor);
             rootLayout.setGravity(Gravity.END);
             if (messageParams != null) {
                 messageParams.gravity = Gravity.END;
             }
             rootLayout.setPadding(60, 8, 16, 8);
+            // Hide buttons for user messages
+            if (holder.buttonCopy != null) holder.buttonCopy.setVisibility(View.GONE);
+            if (holder.buttonSpeak != null) holder.buttonSpeak.setVisibility(View.GONE);
         } else {
             holder.layoutMessage.setBackgroundResource(R.drawable.message_bot_background);
             // Bot messages: white text on dark gray background
-            holder.textViewMessage.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.uos_text_primary));
-            holder.textViewTime.setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.uos_text_secondary));
-            // Show copy button for bot messages
+            holder.textViewMessage.setTextColor(botTextColor);
+            holder.textViewTime.setTextColor(botTimeColor);
+            rootLayout.setGravity(Gravity.START);
+            if (messageParams != null) {
+                messageParams.gravity = Gravity.START;
+            }
+            rootLayout.setPadding(16, 8, 60, 8);
+            // Show copy and speak buttons for bot messages
             if (holder.buttonCopy != null) {
                 holder.buttonCopy.setVisibility(View.VISIBLE);
                 holder.buttonCopy.setOnClickListener(new View.OnClickListener() {
                     @Override
                     public void onClick(View v) {
-                        copyToClipboard(holder.itemView.getContext(), message.getText());
+                        Message message = messageAt(holder.getBindingAdapterPosition());
+                        if (message != null) {
+                            copyToClipboard(v.getContext(), message.getText());
+                        }
                     }
                 });
             }
@@ -78,48 +193,228 @@ public class ChatAdapter extends RecyclerView.Adapter<ChatAdapter.MessageViewHol
                 holder.buttonSpeak.setOnClickListener(new View.OnClickListener() {
                     @Override
                     public void onClick(View v) {
-                        if (listener != null) {
-                            listener.onSpeakClick(message.getText());
+                        Message message = messageAt(holder.getBindingAdapterPosition());
+                        if (message != null && listener != null) {
+                            listener.onSpeakClick(message);
                         }
                     }
                 });
             }
-            rootLayout.setGravity(Gravity.START);
-            if (messageParams != null) {
-                messageParams.gravity = Gravity.START;
-            }
-            rootLayout.setPadding(16, 8, 60, 8);
-        }
-        
-        // Hide buttons for user messages
-        if (message.isUser()) {
-            if (holder.buttonCopy != null) holder.buttonCopy.setVisibility(View.GONE);
-            if (holder.buttonSpeak != null) holder.buttonSpeak.setVisibility(View.GONE);
         }
-        
         if (messageParams != null) {
             holder.layoutMessage.setLayoutParams(messageParams);
         }
+        return holder;
+    }
+    
+    @Override
+    public void onBindViewHolder(@NonNull MessageViewHolder holder, int position) {
+        Message message = differ.getCurrentList().get(position);
+        
+        setMessageText(holder, message);
+        holder.textViewTime.setText(message.getTimestamp());
+        if (!message.isUser()) {
+            // Scrolled to (or prefetched) without a layout yet, the cached one is kept otherwise
+            precompute(message);
+        }
         
-        // Animate message appearance
-        holder.itemView.setAlpha(0f);
-        holder.itemView.setTranslationY(20f);
-        holder.itemView.animate()
-                .alpha(1f)
-                .translationY(0f)
-                .setDuration(300)
-                .setStartDelay(Math.min(position * 30, 300))
-                .start();
+        // Animate message appearance, only the first time an inserted message is shown
+        int index = pendingAnimations.indexOfKey(message.getId());
+        if (index >= 0) {
+            int delay = pendingAnimations.valueAt(index);
+            pendingAnimations.removeAt(index);
+            holder.itemView.setAlpha(0f);
+            holder.itemView.setTranslationY(20f);
+            holder.itemView.animate()
+                    .alpha(1f)
+                    .translationY(0f)
+                    .setDuration(300)
+                    .setStartDelay(delay)
+                    .start();
+        }
+    }
+    
+    @Override
+    public void onBindViewHolder(@NonNull MessageViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_TEXT)) {
+            setMessageText(holder, differ.getCurrentList().get(position));
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+    
+    @Override
+    public void onViewAttachedToWindow(@NonNull MessageViewHolder holder) {
+        if (holder.getItemViewType() != VIEW_TYPE_BOT) {
+            return;
+        }
+        PrecomputedTextCompat.Params params = TextViewCompat.getTextMetricsParams(holder.textViewMessage);
+        if (!params.equals(botTextParams)) {
+            // First bot row, or the layout direction changed: lay out the answers around it
+            // again, the others get laid out when bound
+            botTextParams = params;
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                precomputeBotMessages(differ.getCurrentList(), position - PRECOMPUTE_WINDOW / 2,
+                        position + PRECOMPUTE_WINDOW / 2);
+            }
+        }
+    }
+    
+    @Override
+    public void onViewRecycled(@NonNull MessageViewHolder holder) {
+        // Don't let a half-finished entry animation carry over to the next message
+        holder.itemView.animate().cancel();
+        holder.itemView.setAlpha(1f);
+        holder.itemView.setTranslationY(0f);
     }
     
     @Override
     public int getItemCount() {
-        return messages.size();
+        return differ.getCurrentList().size();
     }
     
-    public void addMessage(Message message) {
-        messages.add(message);
-        notifyItemInserted(messages.size() - 1);
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getId();
+    }
+    
+    // In-place text change of a message that is already shown (or about to be, in which
+    // case the pending diff picks up the new text)
+    public void updateMessageText(Message message, String text) {
+        updateMessageText(message, text, true);
+    }
+    
+    // Pass precompute = false for intermediate text (streaming deltas) that is about to change again
+    public void updateMessageText(Message message, String text, boolean precompute) {
+        message.setText(text);
+        int position = differ.getCurrentList().indexOf(message);
+        if (position != -1) {
+            notifyItemChanged(position, PAYLOAD_TEXT);
+        }
+        if (precompute && !message.isUser()) {
+            precompute(message);
+        }
+    }
+    
+    private void setMessageText(MessageViewHolder holder, Message message) {
+        String text = message.getText();
+        if (!message.isUser() && text != null) {
+            PrecomputedEntry entry = precomputed.get(message.getId());
+            // setPrecomputedText throws unless the layout was made for this view's current
+            // params, which a view that isn't attached yet may not have resolved
+            if (entry != null && text.equals(entry.text)
+                    && entry.layout.getParams().equals(TextViewCompat.getTextMetricsParams(holder.textViewMessage))) {
+                TextViewCompat.setPrecomputedText(holder.textViewMessage, entry.layout);
+                return;
+            }
+        }
+        holder.textViewMessage.setText(text);
+    }
+    
+    private void precomputeBotMessages(List<Message> messages, int from, int to) {
+        for (int i = Math.max(0, from); i < Math.min(messages.size(), to + 1); i++) {
+            Message message = messages.get(i);
+            if (!message.isUser()) {
+                precompute(message);
+            }
+        }
+    }
+    
+    // Lays out only the answers the diff added or changed, the newest PRECOMPUTE_WINDOW of
+    // them when a whole conversation was loaded
+    private void precomputeChangedMessages(List<Message> previousList, List<Message> currentList) {
+        Map<Long, String> previousTexts = new HashMap<>();
+        for (Message message : previousList) {
+            if (!message.isUser()) {
+                previousTexts.put(message.getId(), message.getText());
+            }
+        }
+        int remaining = PRECOMPUTE_WINDOW;
+        for (int i = currentList.size() - 1; i >= 0 && remaining > 0; i--) {
+            Message message = currentList.get(i);
+            if (message.isUser()) {
+                continue;
+            }
+            // Texts are compared by value: the previous list holds the same Message objects,
+            // so a text set in place shows up as unchanged here but was precomputed by
+            // updateMessageText already
+            if (!previousTexts.containsKey(message.getId())
+                    || !equal(previousTexts.get(message.getId()), message.getText())) {
+                precompute(message);
+                remaining--;
+            }
+        }
+    }
+    
+    private void precompute(Message message) {
+        final PrecomputedTextCompat.Params params = botTextParams;
+        final String text = message.getText();
+        final long id = message.getId();
+        if (params == null || text == null || text.isEmpty()) {
+            return;
+        }
+        PrecomputedEntry existing = precomputed.get(id);
+        if (existing != null && text.equals(existing.text) && params.equals(existing.layout.getParams())) {
+            return;
+        }
+        PRECOMPUTE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final PrecomputedTextCompat layout = PrecomputedTextCompat.create(text, params);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!params.equals(botTextParams)) {
+                            // Laid out for params that have since changed, a newer run is queued
+                            return;
+                        }
+                        precomputed.put(id, new PrecomputedEntry(text, layout));
+                        // Swap the plain text for the precomputed one if the row is on screen
+                        List<Message> current = differ.getCurrentList();
+                        for (int i = 0; i < current.size(); i++) {
+                            Message message = current.get(i);
+                            if (message.getId() == id) {
+                                if (text.equals(message.getText())) {
+                                    notifyItemChanged(i, PAYLOAD_TEXT);
+                                }
+                                break;
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+    
+    // Forgets animations of messages that left the list before being shown, and all of them
+    // when a different conversation replaced the current one
+    private void prunePendingAnimations(List<Message> previousList, List<Message> currentList) {
+        if (pendingAnimations.size() == 0) {
+            return;
+        }
+        if (currentList.isEmpty() || (!previousList.isEmpty() && previousList.get(0).getId() != currentList.get(0).getId())) {
+            pendingAnimations.clear();
+            return;
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Message message : currentList) {
+            ids.add(message.getId());
+        }
+        for (int i = pendingAnimations.size() - 1; i >= 0; i--) {
+            if (!ids.contains(pendingAnimations.keyAt(i))) {
+                pendingAnimations.removeAt(i);
+            }
+        }
+    }
+    
+    private Message messageAt(int position) {
+        List<Message> current = differ.getCurrentList();
+        return position >= 0 && position < current.size() ? current.get(position) : null;
+    }
+    
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
     }
     
     private void copyToClipboard(Context context, String text) {
@@ -131,7 +426,7 @@ public class ChatAdapter extends RecyclerView.Adapter<ChatAdapter.MessageViewHol
     
     // Listener interface
     public interface OnMessageClickListener {
-        void onSpeakClick(String text);
+        void onSpeakClick(Message message);
     }
     
     private OnMessageClickListener listener;
@@ -140,6 +435,16 @@ public class ChatAdapter extends RecyclerView.Adapter<ChatAdapter.MessageViewHol
         this.listener = listener;
     }
     
+    private static class PrecomputedEntry {
+        final String text;
+        final PrecomputedTextCompat layout;
+        
+        PrecomputedEntry(String text, PrecomputedTextCompat layout) {
+            this.text = text;
+            this.layout = layout;
+        }
+    }
+    
     static class MessageViewHolder extends RecyclerView.ViewHolder {
         LinearLayout layoutMessage;
         TextView textViewMessage;
@@ -41,19 +41,14 @@ public class ChatHistoryAdapter extends RecyclerView.Adapter<ChatHistoryAdapter.
     public void onBindViewHolder(@NonNull HistoryViewHolder holder, int position) {
         ChatHistoryManager.ChatSession session = history.get(position);
         
-        // Get first user message as title
+        // First user message as title (comes with the session index, no messages needed)
         String title = "New Chat";
-        if (session.messages != null && !session.messages.isEmpty()) {
-            for (com.uos.sindhbot.models.Message msg : session.messages) {
-                if (msg.isUser()) {
-                    String msgText = msg.getText();
-                    if (msgText.length() > 50) {
-                        title = msgText.substring(0, 50) + "...";
-                    } else {
-                        title = msgText;
-                    }
-                    break;
-                }
+        if (session.firstPrompt != null) {
+            String msgText = session.firstPrompt;
+            if (msgText.length() > 50) {
+                title = msgText.substring(0, 50) + "...";
+            } else {
+                title = msgText;
             }
         }
         
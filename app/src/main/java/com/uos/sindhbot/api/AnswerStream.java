@@ -0,0 +1,167 @@
+package com.uos.sindhbot.api;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.uos.sindhbot.models.ApiResponse;
+import com.uos.sindhbot.models.ApiStreamChunk;
+import com.uos.sindhbot.utils.GsonProvider;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Reads the Server-Sent Events produced by api/ask/stream and hands each text delta
+ * to a listener as soon as it arrives, so the first tokens can be shown long before
+ * the whole answer has been generated.
+ */
+public class AnswerStream {
+
+    private static final String DATA_PREFIX = "data:";
+
+    // Streams stay open for the whole generation, so they get their own threads
+    // instead of tying up the OkHttp dispatcher's callback thread
+    private static final ExecutorService executor = Executors.newCachedThreadPool();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final Gson gson = GsonProvider.get();
+
+    public interface Listener {
+        // A new piece of answer text
+        void onDelta(String delta);
+
+        // The stream finished; the answer field holds the full text
+        void onComplete(ApiResponse response);
+
+        // The server has no streaming endpoint (older deployment), use api/ask instead
+        void onUnavailable();
+
+        void onFailure(Throwable t);
+    }
+
+    static boolean isStreamRequest(Request request) {
+        return request.url().encodedPath().endsWith("/api/ask/stream");
+    }
+
+    public static void enqueue(final Call<ResponseBody> call, final Listener listener) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Response<ResponseBody> response = call.execute();
+                    if (response.code() == 404 || response.code() == 405) {
+                        if (response.errorBody() != null) {
+                            response.errorBody().close();
+                        }
+                        post(new Runnable() {
+                            @Override
+                            public void run() {
+                                listener.onUnavailable();
+                            }
+                        });
+                        return;
+                    }
+                    if (!response.isSuccessful() || response.body() == null) {
+                        if (response.errorBody() != null) {
+                            response.errorBody().close();
+                        }
+                        fail(listener, new IOException("HTTP " + response.code()));
+                        return;
+                    }
+                    read(response.body(), listener);
+                } catch (Exception e) {
+                    if (!call.isCanceled()) {
+                        fail(listener, e);
+                    }
+                }
+            }
+        });
+    }
+
+    private static void read(ResponseBody body, final Listener listener) throws IOException {
+        final StringBuilder answer = new StringBuilder();
+        StringBuilder data = new StringBuilder();
+        try {
+            BufferedSource source = body.source();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (line.startsWith(DATA_PREFIX)) {
+                    if (data.length() > 0) {
+                        data.append('\n');
+                    }
+                    String value = line.substring(DATA_PREFIX.length());
+                    data.append(value.startsWith(" ") ? value.substring(1) : value);
+                    continue;
+                }
+                if (!line.isEmpty() || data.length() == 0) {
+                    // Comments, other SSE fields and keep-alive blank lines
+                    continue;
+                }
+
+                ApiStreamChunk chunk = parse(data.toString());
+                data.setLength(0);
+                if (chunk == null) {
+                    continue;
+                }
+
+                if (chunk.getDelta() != null && !chunk.getDelta().isEmpty()) {
+                    final String delta = chunk.getDelta();
+                    answer.append(delta);
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onDelta(delta);
+                        }
+                    });
+                }
+
+                if (chunk.isDone()) {
+                    final ApiResponse result = new ApiResponse(answer.toString(), chunk.getSource(), chunk.getLanguage());
+                    result.setSuccess(chunk.isSuccess());
+                    result.setError(chunk.getError());
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onComplete(result);
+                        }
+                    });
+                    return;
+                }
+            }
+        } finally {
+            body.close();
+        }
+        // Connection closed before the done event
+        fail(listener, new IOException("Answer stream ended unexpectedly"));
+    }
+
+    private static ApiStreamChunk parse(String json) {
+        try {
+            return gson.fromJson(json, ApiStreamChunk.class);
+        } catch (JsonSyntaxException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void fail(final Listener listener, final Throwable t) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFailure(t);
+            }
+        });
+    }
+
+    private static void post(Runnable runnable) {
+        mainHandler.post(runnable);
+    }
+}
@@ -1,7 +1,21 @@
 package com.uos.sindhbot.api;
 
+import com.uos.sindhbot.BuildConfig;
+import com.uos.sindhbot.models.ApiRequest;
+import com.uos.sindhbot.models.ApiResponse;
+import com.uos.sindhbot.utils.GsonProvider;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.ResponseBody;
 import okhttp3.logging.HttpLoggingInterceptor;
+import retrofit2.Call;
+import retrofit2.Callback;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
@@ -10,32 +24,124 @@ public class ApiClient {
     // Change this to your backend API URL
     private static final String BASE_URL = "https://llm-fyp.onrender.com/"; // Production URL
     
-    private static Retrofit retrofit = null;
+    // Connections are kept this long after their last use, matching the keep-warm heartbeat
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    // Streamed answers hold a request open for the whole generation
+    private static final int MAX_REQUESTS = 32;
+    private static final int MAX_REQUESTS_PER_HOST = 8;
+    
+    private static String baseUrl = BASE_URL;
+    private static volatile OkHttpClient httpClient;
+    private static volatile Retrofit retrofit;
+    private static volatile ApiService apiService;
+    
+    // One client for the whole process, so every screen shares its connection pool and threads
+    public static OkHttpClient getHttpClient() {
+        OkHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (ApiClient.class) {
+                client = httpClient;
+                if (client == null) {
+                    client = buildHttpClient();
+                    httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
     
     public static Retrofit getClient() {
-        if (retrofit == null) {
-            HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
-            logging.setLevel(HttpLoggingInterceptor.Level.BODY);
-            
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .addInterceptor(logging)
-                    .connectTimeout(60, java.util.concurrent.TimeUnit.SECONDS)  // Allow time for Render cold start
-                    .readTimeout(60, java.util.concurrent.TimeUnit.SECONDS)
-                    .writeTimeout(60, java.util.concurrent.TimeUnit.SECONDS)
-                    .retryOnConnectionFailure(true)
-                    .build();
-            
-            retrofit = new Retrofit.Builder()
-                    .baseUrl(BASE_URL)
-                    .client(client)
-                    .addConverterFactory(GsonConverterFactory.create())
-                    .build();
+        Retrofit current = retrofit;
+        if (current == null) {
+            synchronized (ApiClient.class) {
+                current = retrofit;
+                if (current == null) {
+                    current = new Retrofit.Builder()
+                            .baseUrl(baseUrl)
+                            .client(getHttpClient())
+                            .addConverterFactory(GsonConverterFactory.create(GsonProvider.get()))
+                            .build();
+                    retrofit = current;
+                }
+            }
         }
-        return retrofit;
+        return current;
     }
     
+    // The Retrofit proxy is stateless and thread-safe, create() only runs once
     public static ApiService getApiService() {
-        return getClient().create(ApiService.class);
+        ApiService service = apiService;
+        if (service == null) {
+            synchronized (ApiClient.class) {
+                service = apiService;
+                if (service == null) {
+                    service = getClient().create(ApiService.class);
+                    apiService = service;
+                }
+            }
+        }
+        return service;
+    }
+    
+    // Point the client at another server, e.g. a local stub (http://10.0.2.2:8000/ on the emulator)
+    public static synchronized void setBaseUrl(String url) {
+        baseUrl = url;
+        // The OkHttp client and its pool are kept, only the Retrofit layer is rebuilt
+        retrofit = null;
+        apiService = null;
+    }
+    
+    private static OkHttpClient buildHttpClient() {
+        // Bodies (passwords, tokens, answers) are only logged in debug builds
+        HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
+        logging.setLevel(BuildConfig.DEBUG ? HttpLoggingInterceptor.Level.BODY : HttpLoggingInterceptor.Level.NONE);
+        
+        // BODY logging buffers the whole response, which would hold back streamed answers
+        HttpLoggingInterceptor streamLogging = new HttpLoggingInterceptor();
+        streamLogging.setLevel(BuildConfig.DEBUG ? HttpLoggingInterceptor.Level.HEADERS : HttpLoggingInterceptor.Level.NONE);
+        
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        
+        return new OkHttpClient.Builder()
+                .addInterceptor(chain -> AnswerStream.isStreamRequest(chain.request())
+                        ? streamLogging.intercept(chain)
+                        : logging.intercept(chain))
+                .addInterceptor(chain -> {
+                    // Every successful reply keeps the warmup state fresh
+                    okhttp3.Response response = chain.proceed(chain.request());
+                    if (response.isSuccessful()) {
+                        BackendWarmup.markReady();
+                        if (!BackendWarmup.isPing(chain.request())) {
+                            KeepWarmScheduler.onTraffic();
+                        }
+                    }
+                    return response;
+                })
+                // Per-phase timings for NetworkMetrics
+                .eventListenerFactory(MetricsEventListener.FACTORY)
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                // HTTP/2 multiplexes concurrent calls over one TLS connection, HTTP/1.1 for plain-text test servers
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(60, TimeUnit.SECONDS)  // Allow time for Render cold start
+                .readTimeout(60, TimeUnit.SECONDS)
+                .writeTimeout(60, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+    
+    // Ask a question and receive the answer incrementally; callbacks run on the main thread.
+    // A question that is already being answered shares the pending stream.
+    public static Call<ResponseBody> streamAnswer(ApiRequest request, AnswerStream.Listener listener) {
+        return RequestCoalescer.streamAnswer(request, listener);
+    }
+    
+    // api/ask, sharing the pending call when the same question is already in flight
+    public static void askQuestion(ApiRequest request, Callback<ApiResponse> callback) {
+        RequestCoalescer.askQuestion(request, callback);
     }
 }
 
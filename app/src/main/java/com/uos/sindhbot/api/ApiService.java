@@ -4,12 +4,21 @@ import com.uos.sindhbot.models.ApiRequest;
 import com.uos.sindhbot.models.ApiResponse;
 import com.uos.sindhbot.models.AuthRequest;
 import com.uos.sindhbot.models.AuthResponse;
+import com.uos.sindhbot.models.BatchRequest;
+import com.uos.sindhbot.models.BatchResponse;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
+import retrofit2.http.GET;
 import retrofit2.http.POST;
 import retrofit2.http.Header;
+import retrofit2.http.Streaming;
 
 public interface ApiService {
+    // Cheap health check, used to wake the backend before the first real request
+    @GET("/")
+    Call<ResponseBody> ping();
+    
     // Authentication
     @POST("api/auth/signup")
     Call<AuthResponse> signup(@Body AuthRequest.SignupRequest request);
@@ -26,5 +35,14 @@ public interface ApiService {
     
     @POST("api/ask")
     Call<ApiResponse> askQuestion(@Header("Authorization") String token, @Body ApiRequest request);
+    
+    // Several questions in one round trip, see QuestionBatcher
+    @POST("api/ask/batch")
+    Call<BatchResponse> askQuestions(@Body BatchRequest request);
+    
+    // Server-Sent Events variant of api/ask, read incrementally through AnswerStream
+    @Streaming
+    @POST("api/ask/stream")
+    Call<ResponseBody> askQuestionStream(@Body ApiRequest request);
 }
 
@@ -0,0 +1,105 @@
+package com.uos.sindhbot.api;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Wakes the backend as soon as the app starts. The Render instance sleeps when idle and
+ * takes tens of seconds to come back, so a cheap GET / is sent from the splash and login
+ * screens while the user is still on them. By the time the first question is asked the
+ * instance is up and the shared OkHttp pool already holds a TLS connection to it.
+ * How long the backend took to answer is recorded so cold starts can be told apart.
+ */
+public class BackendWarmup {
+    private static final String PREFS = "WarmupPrefs";
+    // A reply slower than this means the instance had to be started
+    static final long COLD_START_THRESHOLD_MS = 5000;
+    // Same as OkHttp's default keep-alive, after that both the connection and the instance may be gone
+    private static final long WARM_WINDOW_MS = 5 * 60 * 1000;
+
+    private static boolean inFlight;
+    // elapsedRealtime of the last successful response from the backend, 0 if none yet
+    private static long lastReadyAt;
+    private static long lastReadyMillis = -1;
+
+    public static synchronized void warmUp(Context context) {
+        if (inFlight || isWarm()) {
+            return;
+        }
+        inFlight = true;
+        final Context appContext = context.getApplicationContext();
+        final long start = SystemClock.elapsedRealtime();
+        ApiClient.getApiService().ping().enqueue(new Callback<ResponseBody>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                if (response.body() != null) {
+                    response.body().close();
+                } else if (response.errorBody() != null) {
+                    response.errorBody().close();
+                }
+                synchronized (BackendWarmup.class) {
+                    inFlight = false;
+                }
+                if (response.isSuccessful()) {
+                    recordReady(appContext, SystemClock.elapsedRealtime() - start);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+                synchronized (BackendWarmup.class) {
+                    inFlight = false;
+                }
+                t.printStackTrace();
+            }
+        });
+    }
+
+    // Any successful call proves the instance is up and the connection is fresh
+    public static synchronized void markReady() {
+        lastReadyAt = SystemClock.elapsedRealtime();
+    }
+
+    // Time since the backend last replied successfully, Long.MAX_VALUE if it never has
+    public static synchronized long getIdleMillis() {
+        return lastReadyAt == 0 ? Long.MAX_VALUE : SystemClock.elapsedRealtime() - lastReadyAt;
+    }
+
+    static boolean isPing(okhttp3.Request request) {
+        return request.url().encodedPath().equals("/");
+    }
+
+    public static synchronized boolean isWarm() {
+        return lastReadyAt != 0 && SystemClock.elapsedRealtime() - lastReadyAt < WARM_WINDOW_MS;
+    }
+
+    // Round trip of the last warmup in ms, -1 if none has finished in this process
+    public static synchronized long getLastReadyMillis() {
+        return lastReadyMillis;
+    }
+
+    private static void recordReady(Context context, long millis) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (BackendWarmup.class) {
+            lastReadyAt = now;
+            lastReadyMillis = millis;
+        }
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+                .putLong("lastReadyMillis", millis)
+                // Includes app startup, i.e. how long a user who asks right away would wait at most
+                .putLong("lastReadySinceProcessStart", now - Process.getStartElapsedRealtime());
+        if (millis >= COLD_START_THRESHOLD_MS) {
+            SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+            editor.putLong("lastColdStartMillis", millis)
+                    .putInt("coldStarts", prefs.getInt("coldStarts", 0) + 1);
+        }
+        editor.apply();
+    }
+}
@@ -0,0 +1,206 @@
+package com.uos.sindhbot.api;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Keeps the backend awake while the chat screen is in the foreground. A GET / heartbeat is
+ * sent over the pooled connection whenever the backend has been idle for the current interval;
+ * real traffic pushes the next beat back. The interval adapts to what is observed: a beat that
+ * hits a cold start shortens it to well inside that idle gap, a warm one stretches it a little
+ * (never past the shortest gap known to end in a cold start). Metered networks and a low
+ * battery or power saver make it back off. Start in onResume, stop in onPause.
+ */
+public class KeepWarmScheduler {
+    private static final String PREFS = "WarmupPrefs";
+    private static final long MIN_INTERVAL_MS = 60 * 1000;
+    private static final long MAX_INTERVAL_MS = 14 * 60 * 1000;
+    private static final long DEFAULT_INTERVAL_MS = 4 * 60 * 1000;
+    // Render spins idle instances down after 15 minutes, until a shorter gap has been seen
+    private static final long DEFAULT_COLD_GAP_MS = 15 * 60 * 1000;
+    private static final int LOW_BATTERY_PERCENT = 20;
+
+    // Shared with onTraffic, which is called from OkHttp threads
+    private static long coldGapMillis = DEFAULT_COLD_GAP_MS;
+    private static long lastTrafficAt;
+    private static long lastHeartbeatAt;
+    private static boolean lastHeartbeatWarm;
+    private static int avoidedColdStarts;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private long intervalMillis;
+    private boolean running;
+    private Call<ResponseBody> pending;
+
+    private final Runnable beat = new Runnable() {
+        @Override
+        public void run() {
+            heartbeat();
+        }
+    };
+
+    public KeepWarmScheduler(Context context) {
+        this.context = context.getApplicationContext();
+        SharedPreferences prefs = prefs();
+        intervalMillis = prefs.getLong("heartbeatInterval", DEFAULT_INTERVAL_MS);
+        synchronized (KeepWarmScheduler.class) {
+            coldGapMillis = prefs.getLong("coldGap", DEFAULT_COLD_GAP_MS);
+            avoidedColdStarts = prefs.getInt("avoidedColdStarts", 0);
+        }
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        scheduleNext();
+    }
+
+    public void stop() {
+        running = false;
+        handler.removeCallbacks(beat);
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+        prefs().edit()
+                .putLong("heartbeatInterval", intervalMillis)
+                .putLong("coldGap", getColdGapMillis())
+                .putInt("avoidedColdStarts", getAvoidedColdStarts())
+                .apply();
+    }
+
+    // Questions that came after a sleep-length idle gap but found the backend kept warm
+    public static synchronized int getAvoidedColdStarts() {
+        return avoidedColdStarts;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Called for every successful reply to a real request. Counts it as an avoided cold start
+     * when the backend had been idle long enough to be asleep but a heartbeat found it awake.
+     */
+    static synchronized void onTraffic() {
+        long now = SystemClock.elapsedRealtime();
+        if (lastTrafficAt != 0 && now - lastTrafficAt >= coldGapMillis
+                && lastHeartbeatAt > lastTrafficAt && lastHeartbeatWarm) {
+            avoidedColdStarts++;
+        }
+        lastTrafficAt = now;
+    }
+
+    private static synchronized long getColdGapMillis() {
+        return coldGapMillis;
+    }
+
+    private void scheduleNext() {
+        // Measured from the last reply of any kind, so an active chat needs no heartbeats
+        long delay = backoffInterval() - BackendWarmup.getIdleMillis();
+        handler.postDelayed(beat, Math.max(delay, 0));
+    }
+
+    private void heartbeat() {
+        if (!running) {
+            return;
+        }
+        ConnectivityManager connectivity = context.getSystemService(ConnectivityManager.class);
+        if (connectivity == null || connectivity.getActiveNetwork() == null) {
+            handler.postDelayed(beat, backoffInterval());
+            return;
+        }
+        final long idle = BackendWarmup.getIdleMillis();
+        final long start = SystemClock.elapsedRealtime();
+        pending = ApiClient.getApiService().ping();
+        pending.enqueue(new Callback<ResponseBody>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                if (response.body() != null) {
+                    response.body().close();
+                } else if (response.errorBody() != null) {
+                    response.errorBody().close();
+                }
+                pending = null;
+                if (response.isSuccessful()) {
+                    learn(idle, SystemClock.elapsedRealtime() - start);
+                }
+                if (running) {
+                    scheduleNext();
+                }
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+                pending = null;
+                if (running && !call.isCanceled()) {
+                    handler.postDelayed(beat, backoffInterval());
+                }
+            }
+        });
+    }
+
+    private void learn(long idle, long latency) {
+        boolean cold = latency >= BackendWarmup.COLD_START_THRESHOLD_MS;
+        synchronized (KeepWarmScheduler.class) {
+            lastHeartbeatAt = SystemClock.elapsedRealtime();
+            lastHeartbeatWarm = !cold;
+            if (idle == Long.MAX_VALUE) {
+                // First contact in this process, nothing to learn about gaps
+                return;
+            }
+            if (cold) {
+                // Asleep after this long: beat well inside the gap from now on
+                coldGapMillis = Math.min(coldGapMillis, idle);
+                intervalMillis = idle * 3 / 4;
+            } else {
+                if (idle >= coldGapMillis) {
+                    // Still awake past the gap we thought was the limit
+                    coldGapMillis = idle + MIN_INTERVAL_MS;
+                }
+                intervalMillis = Math.min(intervalMillis * 5 / 4, coldGapMillis * 3 / 4);
+            }
+        }
+        intervalMillis = Math.max(MIN_INTERVAL_MS, Math.min(intervalMillis, MAX_INTERVAL_MS));
+    }
+
+    private long backoffInterval() {
+        long interval = intervalMillis;
+        ConnectivityManager connectivity = context.getSystemService(ConnectivityManager.class);
+        if (connectivity != null && connectivity.isActiveNetworkMetered()) {
+            interval *= 2;
+        }
+        if (isBatterySaving()) {
+            interval *= 4;
+        }
+        return interval;
+    }
+
+    private boolean isBatterySaving() {
+        PowerManager power = context.getSystemService(PowerManager.class);
+        if (power != null && power.isPowerSaveMode()) {
+            return true;
+        }
+        BatteryManager battery = context.getSystemService(BatteryManager.class);
+        return battery != null && !battery.isCharging()
+                && battery.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY) <= LOW_BATTERY_PERCENT;
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,134 @@
+package com.uos.sindhbot.api;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+/**
+ * Times the phases of one OkHttp call and records them in NetworkMetrics. OkHttp creates
+ * one instance per call and invokes it from a single thread at a time, so plain fields are
+ * enough. Phases that don't happen (no DNS or connect on a pooled connection) are simply
+ * not recorded.
+ */
+class MetricsEventListener extends EventListener {
+
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public EventListener create(Call call) {
+            return new MetricsEventListener(call.request());
+        }
+    };
+
+    private final NetworkMetrics.Endpoint metrics;
+    private long callStart;
+    private long dnsStart = -1;
+    private long connectStart = -1;
+    private long secureConnectStart = -1;
+    private long requestStart = -1;
+    private long requestEnd = -1;
+    private long bodyStart = -1;
+
+    MetricsEventListener(Request request) {
+        // Paths here carry no ids, so method and path identify the endpoint
+        String path = request.url().encodedPath();
+        metrics = NetworkMetrics.endpoint(request.method() + " " + (path.length() > 1 ? path.substring(1) : path));
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        NetworkMetrics.record(metrics, NetworkMetrics.Phase.DNS, since(dnsStart));
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStart = System.nanoTime();
+        secureConnectStart = -1;
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        secureConnectStart = System.nanoTime();
+        // TCP part of the connect ends where the handshake begins
+        NetworkMetrics.record(metrics, NetworkMetrics.Phase.CONNECT, secureConnectStart - connectStart);
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        NetworkMetrics.record(metrics, NetworkMetrics.Phase.TLS, since(secureConnectStart));
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        if (secureConnectStart == -1) {
+            NetworkMetrics.record(metrics, NetworkMetrics.Phase.CONNECT, since(connectStart));
+        }
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        requestStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        long now = System.nanoTime();
+        if (requestStart != -1) {
+            NetworkMetrics.record(metrics, NetworkMetrics.Phase.REQUEST_WRITE, requestEnd - requestStart);
+            // Server think time plus one round trip; on a sleeping Render instance, the cold start
+            NetworkMetrics.record(metrics, NetworkMetrics.Phase.TIME_TO_FIRST_BYTE, now - requestEnd);
+        }
+        requestStart = -1;
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+        bodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        NetworkMetrics.record(metrics, NetworkMetrics.Phase.BODY_READ, since(bodyStart));
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        NetworkMetrics.recordCall(metrics, since(callStart), false);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        NetworkMetrics.recordCall(metrics, since(callStart), true);
+    }
+
+    private static long since(long start) {
+        return start == -1 ? -1 : System.nanoTime() - start;
+    }
+}
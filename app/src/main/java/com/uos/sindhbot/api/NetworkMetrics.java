@@ -0,0 +1,131 @@
+package com.uos.sindhbot.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-endpoint latency of every call made through ApiClient, broken down into the phases
+ * reported by {@link MetricsEventListener}. Everything is recorded into lock-free
+ * histograms, so the cost on the request path is a map lookup and a few atomic adds.
+ * Read it with getPercentileMillis, or as text with dump().
+ */
+public class NetworkMetrics {
+
+    public enum Phase {
+        DNS,
+        CONNECT,
+        TLS,
+        REQUEST_WRITE,
+        TIME_TO_FIRST_BYTE,
+        BODY_READ,
+        TOTAL
+    }
+
+    private static final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public static class Endpoint {
+        private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        Endpoint() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new LatencyHistogram();
+            }
+        }
+
+        public LatencyHistogram getHistogram(Phase phase) {
+            return phases[phase.ordinal()];
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+    }
+
+    // "POST api/ask" style keys, sorted
+    public static List<String> getEndpoints() {
+        List<String> keys = new ArrayList<>(endpoints.keySet());
+        Collections.sort(keys);
+        return keys;
+    }
+
+    // null if no call to this endpoint has been made yet
+    public static Endpoint getEndpoint(String endpoint) {
+        return endpoints.get(endpoint);
+    }
+
+    // Percentile (0-100) of a phase in ms, -1 when there are no samples
+    public static double getPercentileMillis(String endpoint, Phase phase, double percentile) {
+        Endpoint metrics = endpoints.get(endpoint);
+        if (metrics == null) {
+            return -1;
+        }
+        long micros = metrics.getHistogram(phase).getPercentile(percentile);
+        return micros < 0 ? -1 : micros / 1000.0;
+    }
+
+    public static void reset() {
+        endpoints.clear();
+    }
+
+    // Table of p50/p95/p99 per endpoint and phase, for logs and dumpsys
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        for (String key : getEndpoints()) {
+            Endpoint metrics = endpoints.get(key);
+            out.append(key)
+                    .append("  calls=").append(metrics.getCalls())
+                    .append(" failures=").append(metrics.getFailures())
+                    .append('\n');
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram histogram = metrics.getHistogram(phase);
+                long count = histogram.getCount();
+                if (count == 0) {
+                    continue;
+                }
+                out.append(String.format(Locale.US, "  %-18s n=%-5d p50=%8.1fms p95=%8.1fms p99=%8.1fms%n",
+                        phase.name().toLowerCase(Locale.US), count,
+                        histogram.getPercentile(50) / 1000.0,
+                        histogram.getPercentile(95) / 1000.0,
+                        histogram.getPercentile(99) / 1000.0));
+            }
+        }
+        return out.toString();
+    }
+
+    static Endpoint endpoint(String key) {
+        Endpoint metrics = endpoints.get(key);
+        if (metrics == null) {
+            Endpoint created = new Endpoint();
+            metrics = endpoints.putIfAbsent(key, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    static void record(Endpoint metrics, Phase phase, long nanos) {
+        if (nanos >= 0) {
+            metrics.getHistogram(phase).record(nanos / 1000);
+        }
+    }
+
+    static void recordCall(Endpoint metrics, long nanos, boolean failed) {
+        metrics.calls.increment();
+        if (failed) {
+            metrics.failures.increment();
+        }
+        record(metrics, Phase.TOTAL, nanos);
+    }
+}
@@ -0,0 +1,170 @@
+package com.uos.sindhbot.api;
+
+import android.os.SystemClock;
+
+import com.uos.sindhbot.models.ApiRequest;
+import com.uos.sindhbot.models.ApiResponse;
+import com.uos.sindhbot.models.BatchRequest;
+import com.uos.sindhbot.models.BatchResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Groups questions sent within a short window into one api/ask/batch call, so draining a
+ * queue of questions costs one round trip instead of one per question. A window that
+ * collects a single question, and every question while the server lacks the batch endpoint
+ * (404/405), goes through api/ask as before. The endpoint is probed again after a while in
+ * case the backend has been redeployed.
+ */
+public class QuestionBatcher {
+    // Same limit as MAX_BATCH_SIZE in backend/main.py
+    public static final int MAX_BATCH_SIZE = 10;
+    private static final long WINDOW_MS = 150;
+    private static final long RETRY_BATCH_AFTER_MS = 60 * 60 * 1000;
+
+    public interface Callback {
+        // Callbacks run on the main thread
+        void onAnswer(ApiResponse response);
+
+        void onHttpError(int code);
+
+        void onFailure(Throwable t);
+    }
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private static final List<Pending> window = new ArrayList<>();
+    private static boolean flushScheduled;
+    // elapsedRealtime until which the batch endpoint is assumed missing
+    private static long batchUnsupportedUntil;
+
+    private static class Pending {
+        final ApiRequest request;
+        final Callback callback;
+
+        Pending(ApiRequest request, Callback callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+    }
+
+    public static void ask(ApiRequest request, Callback callback) {
+        if (!isBatchSupported()) {
+            askSingle(new Pending(request, callback));
+            return;
+        }
+        List<Pending> full = null;
+        synchronized (window) {
+            window.add(new Pending(request, callback));
+            if (window.size() >= MAX_BATCH_SIZE) {
+                full = drain();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<Pending> batch;
+                        synchronized (window) {
+                            batch = drain();
+                        }
+                        send(batch);
+                    }
+                }, WINDOW_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+    }
+
+    // False while the server is known to lack api/ask/batch; callers may then want to limit concurrency
+    public static synchronized boolean isBatchSupported() {
+        return SystemClock.elapsedRealtime() >= batchUnsupportedUntil;
+    }
+
+    private static synchronized void markBatchUnsupported() {
+        batchUnsupportedUntil = SystemClock.elapsedRealtime() + RETRY_BATCH_AFTER_MS;
+    }
+
+    // Called with window held
+    private static List<Pending> drain() {
+        List<Pending> batch = new ArrayList<>(window);
+        window.clear();
+        flushScheduled = false;
+        return batch;
+    }
+
+    private static void send(final List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (batch.size() == 1) {
+            askSingle(batch.get(0));
+            return;
+        }
+        List<ApiRequest> requests = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            requests.add(pending.request);
+        }
+        ApiClient.getApiService().askQuestions(new BatchRequest(requests)).enqueue(new retrofit2.Callback<BatchResponse>() {
+            @Override
+            public void onResponse(Call<BatchResponse> call, Response<BatchResponse> response) {
+                if (response.code() == 404 || response.code() == 405) {
+                    // Older deployment without the endpoint
+                    markBatchUnsupported();
+                    for (Pending pending : batch) {
+                        askSingle(pending);
+                    }
+                    return;
+                }
+                BatchResponse body = response.body();
+                if (!response.isSuccessful() || body == null || body.getAnswers() == null) {
+                    for (Pending pending : batch) {
+                        pending.callback.onHttpError(response.code());
+                    }
+                    return;
+                }
+                List<ApiResponse> answers = body.getAnswers();
+                for (int i = 0; i < batch.size(); i++) {
+                    if (i < answers.size() && answers.get(i) != null) {
+                        batch.get(i).callback.onAnswer(answers.get(i));
+                    } else {
+                        // Short reply, ask the missing ones on their own
+                        askSingle(batch.get(i));
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<BatchResponse> call, Throwable t) {
+                for (Pending pending : batch) {
+                    pending.callback.onFailure(t);
+                }
+            }
+        });
+    }
+
+    private static void askSingle(final Pending pending) {
+        ApiClient.askQuestion(pending.request, new retrofit2.Callback<ApiResponse>() {
+            @Override
+            public void onResponse(Call<ApiResponse> call, Response<ApiResponse> response) {
+                if (response.isSuccessful() && response.body() != null) {
+                    pending.callback.onAnswer(response.body());
+                } else {
+                    pending.callback.onHttpError(response.code());
+                }
+            }
+
+            @Override
+            public void onFailure(Call<ApiResponse> call, Throwable t) {
+                pending.callback.onFailure(t);
+            }
+        });
+    }
+}
@@ -0,0 +1,167 @@
+package com.uos.sindhbot.api;
+
+import com.uos.sindhbot.models.ApiRequest;
+import com.uos.sindhbot.models.ApiResponse;
+import com.uos.sindhbot.utils.TextNormalizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Sends each distinct question once. A question asked again (double-tapped send, resent
+ * while a cold backend is still starting) before the first request has finished is attached
+ * to the pending call instead of becoming another LLM call, and every waiter gets the same
+ * response. Questions are matched on their normalized text and language. Streamed answers
+ * are shared too: a late joiner is first handed everything received so far as one delta.
+ */
+public class RequestCoalescer {
+
+    private static final Map<String, List<Callback<ApiResponse>>> pendingCalls = new HashMap<>();
+    private static final Map<String, SharedStream> pendingStreams = new HashMap<>();
+
+    private static final AtomicInteger requests = new AtomicInteger();
+    private static final AtomicInteger savedCalls = new AtomicInteger();
+
+    public static void askQuestion(ApiRequest request, final Callback<ApiResponse> callback) {
+        final String key = key(request);
+        requests.incrementAndGet();
+        synchronized (pendingCalls) {
+            List<Callback<ApiResponse>> waiters = pendingCalls.get(key);
+            if (waiters != null) {
+                waiters.add(callback);
+                savedCalls.incrementAndGet();
+                return;
+            }
+            waiters = new ArrayList<>();
+            waiters.add(callback);
+            pendingCalls.put(key, waiters);
+        }
+        ApiClient.getApiService().askQuestion(request).enqueue(new Callback<ApiResponse>() {
+            @Override
+            public void onResponse(Call<ApiResponse> call, Response<ApiResponse> response) {
+                for (Callback<ApiResponse> waiter : takeWaiters(key)) {
+                    waiter.onResponse(call, response);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<ApiResponse> call, Throwable t) {
+                for (Callback<ApiResponse> waiter : takeWaiters(key)) {
+                    waiter.onFailure(call, t);
+                }
+            }
+        });
+    }
+
+    public static Call<ResponseBody> streamAnswer(ApiRequest request, AnswerStream.Listener listener) {
+        String key = key(request);
+        requests.incrementAndGet();
+        SharedStream stream;
+        synchronized (pendingStreams) {
+            stream = pendingStreams.get(key);
+            if (stream != null) {
+                savedCalls.incrementAndGet();
+                stream.join(listener);
+                return stream.call;
+            }
+            stream = new SharedStream(key, ApiClient.getApiService().askQuestionStream(request));
+            stream.join(listener);
+            pendingStreams.put(key, stream);
+        }
+        AnswerStream.enqueue(stream.call, stream);
+        return stream.call;
+    }
+
+    // Questions sent to the backend or attached to a pending one, since the process started
+    public static int getRequestCount() {
+        return requests.get();
+    }
+
+    // Backend calls that were not made because an identical one was already in flight
+    public static int getSavedCallCount() {
+        return savedCalls.get();
+    }
+
+    private static String key(ApiRequest request) {
+        return request.getLanguage() + '\n' + TextNormalizer.normalize(request.getQuestion());
+    }
+
+    private static List<Callback<ApiResponse>> takeWaiters(String key) {
+        synchronized (pendingCalls) {
+            List<Callback<ApiResponse>> waiters = pendingCalls.remove(key);
+            return waiters != null ? waiters : new ArrayList<Callback<ApiResponse>>();
+        }
+    }
+
+    // Fans one stream out to every listener that asked the same question; runs on the main thread
+    private static class SharedStream implements AnswerStream.Listener {
+        final String key;
+        final Call<ResponseBody> call;
+        private final List<AnswerStream.Listener> listeners = new ArrayList<>();
+        private final StringBuilder received = new StringBuilder();
+
+        SharedStream(String key, Call<ResponseBody> call) {
+            this.key = key;
+            this.call = call;
+        }
+
+        // Called with pendingStreams held
+        void join(AnswerStream.Listener listener) {
+            listeners.add(listener);
+            if (received.length() > 0) {
+                listener.onDelta(received.toString());
+            }
+        }
+
+        @Override
+        public void onDelta(String delta) {
+            List<AnswerStream.Listener> targets;
+            synchronized (pendingStreams) {
+                received.append(delta);
+                targets = new ArrayList<>(listeners);
+            }
+            for (AnswerStream.Listener listener : targets) {
+                listener.onDelta(delta);
+            }
+        }
+
+        @Override
+        public void onComplete(ApiResponse response) {
+            for (AnswerStream.Listener listener : finish()) {
+                listener.onComplete(response);
+            }
+        }
+
+        @Override
+        public void onUnavailable() {
+            // Each listener falls back to askQuestion, where they are coalesced again
+            for (AnswerStream.Listener listener : finish()) {
+                listener.onUnavailable();
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            for (AnswerStream.Listener listener : finish()) {
+                listener.onFailure(t);
+            }
+        }
+
+        private List<AnswerStream.Listener> finish() {
+            synchronized (pendingStreams) {
+                if (pendingStreams.get(key) == this) {
+                    pendingStreams.remove(key);
+                }
+                return new ArrayList<>(listeners);
+            }
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.uos.sindhbot.models;
 
+import java.util.List;
+
 public class ApiRequest {
     private String question;
     private String language;
+    // Script/language runs of the question; null (and left out of the JSON) if not segmented
+    private List<TextSegment> segments;
 
     public ApiRequest(String question, String language) {
         this.question = question;
@@ -24,5 +28,12 @@ public class ApiRequest {
     public void setLanguage(String language) {
         this.language = language;
     }
-}
 
+    public List<TextSegment> getSegments() {
+        return segments;
+    }
+
+    public void setSegments(List<TextSegment> segments) {
+        this.segments = segments;
+    }
+}
@@ -6,6 +6,8 @@ public class ApiResponse {
     private String language;
     private boolean success;
     private String error;
+    // A failure the server expects to go away, worth asking again later
+    private boolean retryable;
 
     public ApiResponse() {
     }
@@ -49,6 +51,14 @@ public class ApiResponse {
         this.success = success;
     }
 
+    // Answer as shown in the chat, with the source on its own line
+    public String getAnswerWithSource() {
+        if (source != null && !source.isEmpty()) {
+            return answer + "\n\nSource: " + source;
+        }
+        return answer;
+    }
+
     public String getError() {
         return error;
     }
@@ -56,5 +66,13 @@ public class ApiResponse {
     public void setError(String error) {
         this.error = error;
     }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    public void setRetryable(boolean retryable) {
+        this.retryable = retryable;
+    }
 }
 
@@ -0,0 +1,20 @@
+package com.uos.sindhbot.models;
+
+import java.util.List;
+
+// Body of api/ask/batch
+public class BatchRequest {
+    private List<ApiRequest> questions;
+
+    public BatchRequest(List<ApiRequest> questions) {
+        this.questions = questions;
+    }
+
+    public List<ApiRequest> getQuestions() {
+        return questions;
+    }
+
+    public void setQuestions(List<ApiRequest> questions) {
+        this.questions = questions;
+    }
+}
@@ -0,0 +1,16 @@
+package com.uos.sindhbot.models;
+
+import java.util.List;
+
+// Reply of api/ask/batch: one answer per question, in request order
+public class BatchResponse {
+    private List<ApiResponse> answers;
+
+    public List<ApiResponse> getAnswers() {
+        return answers;
+    }
+
+    public void setAnswers(List<ApiResponse> answers) {
+        this.answers = answers;
+    }
+}
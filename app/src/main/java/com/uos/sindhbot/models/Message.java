@@ -1,24 +1,44 @@
 package com.uos.sindhbot.models;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class Message {
+    // Seeded from the clock so ids stay unique across app restarts
+    private static final AtomicLong NEXT_ID = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private long id;
     private String text;
     private boolean isUser;
     private String timestamp;
     private String language;
 
     public Message(String text, boolean isUser, String timestamp) {
+        this.id = NEXT_ID.incrementAndGet();
         this.text = text;
         this.isUser = isUser;
         this.timestamp = timestamp;
     }
 
     public Message(String text, boolean isUser, String timestamp, String language) {
+        this.id = NEXT_ID.incrementAndGet();
         this.text = text;
         this.isUser = isUser;
         this.timestamp = timestamp;
         this.language = language;
     }
 
+    // Stable identity for list diffing; messages saved before ids existed get one on first use
+    public long getId() {
+        if (id == 0) {
+            id = NEXT_ID.incrementAndGet();
+        }
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getText() {
         return text;
     }
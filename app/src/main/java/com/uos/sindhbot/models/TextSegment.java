@@ -0,0 +1,27 @@
+package com.uos.sindhbot.models;
+
+public class TextSegment {
+    private String text;
+    private String language;
+
+    public TextSegment(String text, String language) {
+        this.text = text;
+        this.language = language;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+}
@@ -0,0 +1,299 @@
+package com.uos.sindhbot.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.gson.Gson;
+import com.uos.sindhbot.models.ApiResponse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Two-tier cache of backend answers keyed by normalized question + language.
+ * Recent answers live in an in-memory LRU; everything is also written to small
+ * JSON files under the app cache dir, expired after a TTL and trimmed to a size
+ * budget (least recently used first). Disk work runs on a single background thread.
+ */
+public class AnswerCache {
+    private static final String CACHE_DIR = "answers";
+    private static final int MEMORY_ENTRIES = 64;
+    private static final long MAX_DISK_BYTES = 2 * 1024 * 1024;
+    private static final long TTL_MS = 7L * 24 * 60 * 60 * 1000;
+    // Older entries are still served, but the caller should refresh them in the background
+    private static final long REVALIDATE_AFTER_MS = 24L * 60 * 60 * 1000;
+
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\s?.!؟۔]+$");
+
+    private static volatile AnswerCache instance;
+
+    private final File directory;
+    private final Gson gson = GsonProvider.get();
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Map<String, Entry> memory = new LinkedHashMap<String, Entry>(MEMORY_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > MEMORY_ENTRIES) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public interface Callback {
+        // cached is null on a miss; stale means it should be revalidated
+        void onResult(ApiResponse cached, boolean stale);
+    }
+
+    public static AnswerCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AnswerCache.class) {
+                if (instance == null) {
+                    instance = new AnswerCache(new File(context.getApplicationContext().getCacheDir(), CACHE_DIR));
+                }
+            }
+        }
+        return instance;
+    }
+
+    private AnswerCache(File directory) {
+        this.directory = directory;
+    }
+
+    // Memory hits are reported synchronously, disk lookups on the main thread once read
+    public void lookup(String question, String language, final Callback callback) {
+        final String key = key(question, language);
+        long now = System.currentTimeMillis();
+
+        Entry entry;
+        synchronized (memory) {
+            entry = memory.get(key);
+        }
+        if (entry != null && !entry.isExpired(now)) {
+            memoryHits.incrementAndGet();
+            callback.onResult(entry.toResponse(), entry.isStale(now));
+            return;
+        }
+
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Entry diskEntry = readFromDisk(key);
+                if (diskEntry != null) {
+                    diskHits.incrementAndGet();
+                    synchronized (memory) {
+                        memory.put(key, diskEntry);
+                    }
+                } else {
+                    misses.incrementAndGet();
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        long now = System.currentTimeMillis();
+                        if (diskEntry != null) {
+                            callback.onResult(diskEntry.toResponse(), diskEntry.isStale(now));
+                        } else {
+                            callback.onResult(null, false);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    public void put(String question, String language, ApiResponse response) {
+        if (response == null || !response.isSuccess() || response.getAnswer() == null) {
+            return;
+        }
+        final String key = key(question, language);
+        final Entry entry = new Entry();
+        entry.key = key;
+        entry.answer = response.getAnswer();
+        entry.source = response.getSource();
+        entry.language = response.getLanguage();
+        entry.storedAt = System.currentTimeMillis();
+
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeToDisk(entry);
+                trimDisk();
+            }
+        });
+    }
+
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = directory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+            }
+        });
+    }
+
+    public long getHitCount() {
+        return memoryHits.get() + diskHits.get();
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    static String key(String question, String language) {
+        // Spelling variants of the same Urdu/Sindhi question share one entry
+        String normalized = TextNormalizer.normalize(question);
+        normalized = TRAILING_PUNCTUATION.matcher(normalized).replaceAll("");
+        return (language == null ? "en" : language) + "|" + normalized;
+    }
+
+    private Entry readFromDisk(String key) {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            Entry entry = gson.fromJson(reader, Entry.class);
+            // Hash collision or unreadable file
+            if (entry == null || !key.equals(entry.key)) {
+                return null;
+            }
+            if (entry.isExpired(System.currentTimeMillis())) {
+                file.delete();
+                evictions.incrementAndGet();
+                return null;
+            }
+            // Last-modified doubles as the disk LRU clock
+            file.setLastModified(System.currentTimeMillis());
+            return entry;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void writeToDisk(Entry entry) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+        File file = fileFor(entry.key);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            gson.toJson(entry, writer);
+        } catch (Exception e) {
+            e.printStackTrace();
+            file.delete();
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (total <= MAX_DISK_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private File fileFor(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                name.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return new File(directory, name.toString());
+        } catch (Exception e) {
+            return new File(directory, Integer.toHexString(key.hashCode()));
+        }
+    }
+
+    private static class Entry {
+        String key;
+        String answer;
+        String source;
+        String language;
+        long storedAt;
+
+        boolean isExpired(long now) {
+            return now - storedAt > TTL_MS;
+        }
+
+        boolean isStale(long now) {
+            return now - storedAt > REVALIDATE_AFTER_MS;
+        }
+
+        ApiResponse toResponse() {
+            return new ApiResponse(answer, source, language);
+        }
+    }
+}
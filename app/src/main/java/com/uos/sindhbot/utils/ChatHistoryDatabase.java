@@ -0,0 +1,516 @@
+package com.uos.sindhbot.utils;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import com.uos.sindhbot.models.Message;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * SQLite storage behind ChatHistoryManager. Sessions and messages live in separate
+ * tables so that saving a session only inserts the messages added since the last save
+ * instead of rewriting the whole history.
+ */
+class ChatHistoryDatabase extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "chat_history.db";
+    private static final int DATABASE_VERSION = 4;
+
+    static final int MAX_SESSIONS = 50;
+    // Characters of the first user prompt returned with the session index
+    static final int FIRST_PROMPT_LENGTH = 50;
+
+    private static final String TABLE_SESSIONS = "sessions";
+    private static final String TABLE_MESSAGES = "messages";
+    private static final String TABLE_OUTBOX = "outbox";
+
+    private static volatile ChatHistoryDatabase instance;
+
+    static ChatHistoryDatabase getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ChatHistoryDatabase.class) {
+                if (instance == null) {
+                    instance = new ChatHistoryDatabase(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ChatHistoryDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SESSIONS + " ("
+                + "id TEXT PRIMARY KEY, "
+                + "title TEXT, "
+                + "timestamp INTEGER NOT NULL, "
+                + "message_count INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_sessions_timestamp ON " + TABLE_SESSIONS + " (timestamp)");
+
+        db.execSQL("CREATE TABLE " + TABLE_MESSAGES + " ("
+                + "row_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "session_id TEXT NOT NULL, "
+                + "position INTEGER NOT NULL, "
+                + "text TEXT, "
+                + "is_user INTEGER NOT NULL, "
+                + "timestamp TEXT, "
+                + "language TEXT, "
+                + "message_id INTEGER, "
+                + "search_text TEXT)");
+        db.execSQL("CREATE UNIQUE INDEX idx_messages_session ON " + TABLE_MESSAGES + " (session_id, position)");
+
+        createOutbox(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // Stable message ids for list diffing; old rows get a fresh id when loaded
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN message_id INTEGER");
+        }
+        if (oldVersion < 3) {
+            // Normalized copy of the text for history search
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN search_text TEXT");
+            backfillSearchText(db);
+        }
+        if (oldVersion < 4) {
+            createOutbox(db);
+        }
+    }
+
+    // Questions that could not be sent, see QuestionOutbox
+    private void createOutbox(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_OUTBOX + " ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "session_id TEXT NOT NULL, "
+                + "message_id INTEGER NOT NULL, "
+                + "request TEXT NOT NULL, "
+                + "attempts INTEGER NOT NULL DEFAULT 0, "
+                + "next_attempt INTEGER NOT NULL DEFAULT 0, "
+                + "answer TEXT, "
+                + "delivered INTEGER)");
+    }
+
+    /**
+     * Brings the stored copy of a session in line with the given messages. Messages past the
+     * stored count are inserted, the stored rows at changedPositions are rewritten (a loading
+     * placeholder that became the answer, or rows shifted when a placeholder was replaced by
+     * a new message) and trailing rows the list no longer has are dropped. With
+     * changedPositions null every stored row is read back and compared instead.
+     */
+    void saveSession(String sessionId, String title, List<Message> messages, Set<Integer> changedPositions) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long now = System.currentTimeMillis();
+            int storedCount = -1;
+            String storedTitle = null;
+            Cursor cursor = db.query(TABLE_SESSIONS, new String[]{"title", "message_count"},
+                    "id = ?", new String[]{sessionId}, null, null, null);
+            try {
+                if (cursor.moveToFirst()) {
+                    storedTitle = cursor.getString(0);
+                    storedCount = cursor.getInt(1);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            ContentValues session = new ContentValues();
+            session.put("timestamp", now);
+            session.put("message_count", messages.size());
+
+            if (storedCount == -1) {
+                session.put("id", sessionId);
+                session.put("title", title);
+                db.insert(TABLE_SESSIONS, null, session);
+                insertMessages(db, sessionId, messages, 0);
+                trimSessions(db);
+            } else {
+                // Don't overwrite title if it's already set and not default
+                if (storedTitle == null || storedTitle.isEmpty() || storedTitle.equals("New Chat")) {
+                    session.put("title", title);
+                }
+                db.update(TABLE_SESSIONS, session, "id = ?", new String[]{sessionId});
+
+                if (messages.size() < storedCount) {
+                    db.delete(TABLE_MESSAGES, "session_id = ? AND position >= ?",
+                            new String[]{sessionId, String.valueOf(messages.size())});
+                    storedCount = messages.size();
+                }
+                if (changedPositions == null) {
+                    changedPositions = findChangedMessages(db, sessionId, messages, storedCount);
+                }
+                updateMessages(db, sessionId, messages, changedPositions, storedCount);
+                insertMessages(db, sessionId, messages, storedCount);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Newest first, with messages, limited to MAX_SESSIONS
+    List<ChatHistoryManager.ChatSession> loadSessions() {
+        SQLiteDatabase db = getReadableDatabase();
+        List<ChatHistoryManager.ChatSession> sessions = new ArrayList<>();
+        Map<String, ChatHistoryManager.ChatSession> byId = new HashMap<>();
+
+        Cursor cursor = db.query(TABLE_SESSIONS, new String[]{"id", "title", "timestamp", "message_count"},
+                null, null, null, null, "timestamp DESC", String.valueOf(MAX_SESSIONS));
+        try {
+            while (cursor.moveToNext()) {
+                ChatHistoryManager.ChatSession session = new ChatHistoryManager.ChatSession();
+                session.id = cursor.getString(0);
+                session.title = cursor.getString(1);
+                session.timestamp = cursor.getLong(2);
+                session.messageCount = cursor.getInt(3);
+                session.messages = new ArrayList<>();
+                sessions.add(session);
+                byId.put(session.id, session);
+            }
+        } finally {
+            cursor.close();
+        }
+        if (sessions.isEmpty()) {
+            return sessions;
+        }
+
+        cursor = db.rawQuery("SELECT session_id, text, is_user, timestamp, language, message_id FROM " + TABLE_MESSAGES
+                + " WHERE session_id IN (SELECT id FROM " + TABLE_SESSIONS + " ORDER BY timestamp DESC LIMIT " + MAX_SESSIONS + ")"
+                + " ORDER BY session_id, position", null);
+        try {
+            while (cursor.moveToNext()) {
+                ChatHistoryManager.ChatSession session = byId.get(cursor.getString(0));
+                if (session != null) {
+                    Message message = readMessage(cursor, 1);
+                    if (session.firstPrompt == null && message.isUser()) {
+                        session.firstPrompt = message.getText();
+                    }
+                    session.messages.add(message);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return sessions;
+    }
+
+    // Drawer listing: metadata only, messages stay null until loadMessages is called
+    List<ChatHistoryManager.ChatSession> loadSessionIndex() {
+        return loadSessionIndex("", null);
+    }
+    
+    // Sessions with a message containing the query, which must already be TextNormalizer-normalized
+    List<ChatHistoryManager.ChatSession> searchSessionIndex(String normalizedQuery) {
+        String pattern = "%" + normalizedQuery.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return loadSessionIndex(" WHERE s.id IN (SELECT session_id FROM " + TABLE_MESSAGES
+                + " WHERE search_text LIKE ? ESCAPE '\\')", new String[]{pattern});
+    }
+    
+    private List<ChatHistoryManager.ChatSession> loadSessionIndex(String where, String[] args) {
+        SQLiteDatabase db = getReadableDatabase();
+        List<ChatHistoryManager.ChatSession> sessions = new ArrayList<>();
+        // The first prompt is found through the (session_id, position) index, and only its
+        // first characters are read
+        Cursor cursor = db.rawQuery("SELECT s.id, s.title, s.timestamp, s.message_count, "
+                + "(SELECT substr(m.text, 1, " + (FIRST_PROMPT_LENGTH + 1) + ") FROM " + TABLE_MESSAGES + " m"
+                + " WHERE m.session_id = s.id AND m.is_user = 1 ORDER BY m.position LIMIT 1)"
+                + " FROM " + TABLE_SESSIONS + " s" + where
+                + " ORDER BY s.timestamp DESC LIMIT " + MAX_SESSIONS, args);
+        try {
+            while (cursor.moveToNext()) {
+                ChatHistoryManager.ChatSession session = new ChatHistoryManager.ChatSession();
+                session.id = cursor.getString(0);
+                session.title = cursor.getString(1);
+                session.timestamp = cursor.getLong(2);
+                session.messageCount = cursor.getInt(3);
+                session.firstPrompt = cursor.getString(4);
+                sessions.add(session);
+            }
+        } finally {
+            cursor.close();
+        }
+        return sessions;
+    }
+
+    List<Message> loadMessages(String sessionId) {
+        SQLiteDatabase db = getReadableDatabase();
+        List<Message> messages = new ArrayList<>();
+        Cursor cursor = db.query(TABLE_MESSAGES, new String[]{"text", "is_user", "timestamp", "language", "message_id"},
+                "session_id = ?", new String[]{sessionId}, null, null, "position");
+        try {
+            while (cursor.moveToNext()) {
+                messages.add(readMessage(cursor, 0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return messages;
+    }
+
+    // One-time import of the old SharedPreferences history, keeping its order and timestamps
+    void importSessions(List<ChatHistoryManager.ChatSession> sessions) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ChatHistoryManager.ChatSession session : sessions) {
+                String id = session.id != null ? session.id : UUID.randomUUID().toString();
+                List<Message> messages = session.messages != null ? session.messages : new ArrayList<Message>();
+
+                ContentValues values = new ContentValues();
+                values.put("id", id);
+                values.put("title", session.title);
+                values.put("timestamp", session.timestamp);
+                values.put("message_count", messages.size());
+                if (db.insertWithOnConflict(TABLE_SESSIONS, null, values, SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+                    insertMessages(db, id, messages, 0);
+                }
+            }
+            trimSessions(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    void clear() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_MESSAGES, null, null);
+            db.delete(TABLE_OUTBOX, null, null);
+            db.delete(TABLE_SESSIONS, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    long insertOutboxEntry(String sessionId, long messageId, String request, long nextAttempt) {
+        ContentValues values = new ContentValues();
+        values.put("session_id", sessionId);
+        values.put("message_id", messageId);
+        values.put("request", request);
+        values.put("next_attempt", nextAttempt);
+        return getWritableDatabase().insert(TABLE_OUTBOX, null, values);
+    }
+
+    // Unsent questions, oldest first
+    List<QuestionOutbox.Entry> loadPendingOutbox() {
+        return loadOutbox("answer IS NULL");
+    }
+
+    // Answered questions whose chat hasn't picked the answer up yet
+    List<QuestionOutbox.Entry> loadDeliveredOutbox() {
+        return loadOutbox("answer IS NOT NULL");
+    }
+
+    private List<QuestionOutbox.Entry> loadOutbox(String where) {
+        List<QuestionOutbox.Entry> entries = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().query(TABLE_OUTBOX,
+                new String[]{"id", "session_id", "message_id", "request", "attempts", "next_attempt", "answer"},
+                where, null, null, null, "id");
+        try {
+            while (cursor.moveToNext()) {
+                QuestionOutbox.Entry entry = new QuestionOutbox.Entry();
+                entry.id = cursor.getLong(0);
+                entry.sessionId = cursor.getString(1);
+                entry.messageId = cursor.getLong(2);
+                entry.request = cursor.getString(3);
+                entry.attempts = cursor.getInt(4);
+                entry.nextAttempt = cursor.getLong(5);
+                entry.answer = cursor.getString(6);
+                entries.add(entry);
+            }
+        } finally {
+            cursor.close();
+        }
+        return entries;
+    }
+
+    void rescheduleOutboxEntry(long id, int attempts, long nextAttempt) {
+        ContentValues values = new ContentValues();
+        values.put("attempts", attempts);
+        values.put("next_attempt", nextAttempt);
+        getWritableDatabase().update(TABLE_OUTBOX, values, "id = ?", new String[]{String.valueOf(id)});
+    }
+
+    // Connectivity is back, everything pending is due now
+    void resetOutboxBackoff() {
+        ContentValues values = new ContentValues();
+        values.put("next_attempt", 0);
+        getWritableDatabase().update(TABLE_OUTBOX, values, "answer IS NULL", null);
+    }
+
+    /**
+     * Stores the answer with the entry and writes it over the placeholder message in the
+     * session's history, in one transaction. The entry stays until the chat has taken it.
+     */
+    void deliverOutboxEntry(QuestionOutbox.Entry entry, String answer) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues outbox = new ContentValues();
+            outbox.put("answer", answer);
+            outbox.put("delivered", System.currentTimeMillis());
+            db.update(TABLE_OUTBOX, outbox, "id = ?", new String[]{String.valueOf(entry.id)});
+
+            ContentValues message = new ContentValues();
+            message.put("text", answer);
+            message.put("search_text", TextNormalizer.normalize(answer));
+            db.update(TABLE_MESSAGES, message, "session_id = ? AND message_id = ?",
+                    new String[]{entry.sessionId, String.valueOf(entry.messageId)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    void deleteOutboxEntry(long id) {
+        getWritableDatabase().delete(TABLE_OUTBOX, "id = ?", new String[]{String.valueOf(id)});
+    }
+
+    // Answers for chats that were never opened again
+    void purgeDeliveredOutbox(long deliveredBefore) {
+        getWritableDatabase().delete(TABLE_OUTBOX, "answer IS NOT NULL AND delivered < ?",
+                new String[]{String.valueOf(deliveredBefore)});
+    }
+
+    private void insertMessages(SQLiteDatabase db, String sessionId, List<Message> messages, int from) {
+        if (from >= messages.size()) {
+            return;
+        }
+        SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_MESSAGES
+                + " (session_id, position, text, is_user, timestamp, language, message_id, search_text) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        try {
+            for (int i = from; i < messages.size(); i++) {
+                Message message = messages.get(i);
+                insert.clearBindings();
+                insert.bindString(1, sessionId);
+                insert.bindLong(2, i);
+                bindNullable(insert, 3, message.getText());
+                insert.bindLong(4, message.isUser() ? 1 : 0);
+                bindNullable(insert, 5, message.getTimestamp());
+                bindNullable(insert, 6, message.getLanguage());
+                insert.bindLong(7, message.getId());
+                insert.bindString(8, TextNormalizer.normalize(message.getText()));
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    // Positions below storedCount whose row no longer holds the message at that position
+    private Set<Integer> findChangedMessages(SQLiteDatabase db, String sessionId, List<Message> messages, int storedCount) {
+        Set<Integer> changed = new HashSet<>();
+        if (storedCount <= 0) {
+            return changed;
+        }
+        Cursor cursor = db.query(TABLE_MESSAGES, new String[]{"position", "message_id", "text"},
+                "session_id = ? AND position < ?", new String[]{sessionId, String.valueOf(storedCount)},
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                int position = cursor.getInt(0);
+                Message message = messages.get(position);
+                boolean sameId = !cursor.isNull(1) && cursor.getLong(1) == message.getId();
+                String storedText = cursor.getString(2);
+                boolean sameText = storedText == null ? message.getText() == null : storedText.equals(message.getText());
+                if (!sameId || !sameText) {
+                    changed.add(position);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return changed;
+    }
+
+    private void updateMessages(SQLiteDatabase db, String sessionId, List<Message> messages, Set<Integer> positions, int storedCount) {
+        if (positions.isEmpty()) {
+            return;
+        }
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_MESSAGES
+                + " SET text = ?, is_user = ?, timestamp = ?, language = ?, message_id = ?, search_text = ?"
+                + " WHERE session_id = ? AND position = ?");
+        try {
+            for (int position : positions) {
+                if (position >= storedCount) {
+                    // Past the stored rows, inserted instead
+                    continue;
+                }
+                Message message = messages.get(position);
+                update.clearBindings();
+                bindNullable(update, 1, message.getText());
+                update.bindLong(2, message.isUser() ? 1 : 0);
+                bindNullable(update, 3, message.getTimestamp());
+                bindNullable(update, 4, message.getLanguage());
+                update.bindLong(5, message.getId());
+                update.bindString(6, TextNormalizer.normalize(message.getText()));
+                update.bindString(7, sessionId);
+                update.bindLong(8, position);
+                update.executeUpdateDelete();
+            }
+        } finally {
+            update.close();
+        }
+    }
+
+    private void backfillSearchText(SQLiteDatabase db) {
+        Cursor cursor = db.query(TABLE_MESSAGES, new String[]{"row_id", "text"}, null, null, null, null, null);
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_MESSAGES + " SET search_text = ? WHERE row_id = ?");
+        try {
+            while (cursor.moveToNext()) {
+                update.clearBindings();
+                update.bindString(1, TextNormalizer.normalize(cursor.getString(1)));
+                update.bindLong(2, cursor.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            cursor.close();
+            update.close();
+        }
+    }
+    
+    private void trimSessions(SQLiteDatabase db) {
+        // Keep only last MAX_SESSIONS chats
+        String overflow = "SELECT id FROM " + TABLE_SESSIONS + " ORDER BY timestamp DESC LIMIT -1 OFFSET " + MAX_SESSIONS;
+        db.execSQL("DELETE FROM " + TABLE_MESSAGES + " WHERE session_id IN (" + overflow + ")");
+        db.execSQL("DELETE FROM " + TABLE_SESSIONS + " WHERE id IN (" + overflow + ")");
+    }
+
+    private static Message readMessage(Cursor cursor, int firstColumn) {
+        Message message = new Message(
+                cursor.getString(firstColumn),
+                cursor.getInt(firstColumn + 1) == 1,
+                cursor.getString(firstColumn + 2),
+                cursor.getString(firstColumn + 3));
+        if (!cursor.isNull(firstColumn + 4)) {
+            message.setId(cursor.getLong(firstColumn + 4));
+        }
+        return message;
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -7,8 +7,8 @@ import com.google.gson.reflect.TypeToken;
 import com.uos.sindhbot.models.Message;
 
 import java.lang.reflect.Type;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class ChatHistoryManager {
     private static final String PREF_NAME = "ChatHistory";
@@ -16,17 +16,21 @@ public class ChatHistoryManager {
     private static final String KEY_CURRENT_CHAT = "current_chat";
     
     private SharedPreferences sharedPreferences;
+    private ChatHistoryDatabase database;
+    private CurrentChatJournal currentChatJournal;
     private Gson gson;
     
     public ChatHistoryManager(Context context) {
         sharedPreferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
-        gson = new Gson();
+        database = ChatHistoryDatabase.getInstance(context);
+        currentChatJournal = CurrentChatJournal.getInstance(context);
+        gson = GsonProvider.get();
     }
     
-    // Save current chat messages
-    public void saveCurrentChat(List<Message> messages) {
-        String json = gson.toJson(messages);
-        sharedPreferences.edit().putString(KEY_CURRENT_CHAT, json).apply();
+    // Save current chat messages (appends only what changed since the last save); changedPositions
+    // are the saved positions whose message changed, or null if unknown
+    public void saveCurrentChat(List<Message> messages, Set<Integer> changedPositions) {
+        currentChatJournal.save(messages, changedPositions);
     }
     
     // Save current chat sessions ID
@@ -41,91 +45,91 @@ public class ChatHistoryManager {
     // Load current chat messages
     public List<Message> loadCurrentChat() {
         String json = sharedPreferences.getString(KEY_CURRENT_CHAT, null);
-        if (json == null) {
-            return new ArrayList<>();
-        }
-        
-        Type type = new TypeToken<List<Message>>(){}.getType();
-        List<Message> messages = gson.fromJson(json, type);
-        return messages != null ? messages : new ArrayList<>();
-    }
-    
-    // Save chat to history (with timestamp)
-    public void saveToHistory(List<Message> messages, String chatTitle, String sessionId) {
-        List<ChatSession> history = getChatHistory();
-        
-        // Check if session with this ID already exists
-        int existingIndex = -1;
-        if (sessionId != null) {
-            for (int i = 0; i < history.size(); i++) {
-                if (sessionId.equals(history.get(i).id)) {
-                    existingIndex = i;
-                    break;
+        if (json != null) {
+            // Migration: move the old prefs copy into the journal
+            if (currentChatJournal.isEmpty()) {
+                Type type = new TypeToken<List<Message>>(){}.getType();
+                List<Message> messages = gson.fromJson(json, type);
+                if (messages != null) {
+                    currentChatJournal.replaceAll(messages);
                 }
             }
+            sharedPreferences.edit().remove(KEY_CURRENT_CHAT).apply();
         }
-
-        ChatSession session;
-        if (existingIndex != -1) {
-            // Update existing session
-            session = history.get(existingIndex);
-            session.messages = new ArrayList<>(messages);
-            session.timestamp = System.currentTimeMillis();
-            // Don't overwrite title if it's already set and not default, unless it was "New Chat"
-            if (session.title == null || session.title.equals("New Chat") || session.title.isEmpty()) {
-                 session.title = chatTitle;
-            }
-            
-            // Move to top
-            history.remove(existingIndex);
-            history.add(0, session);
-        } else {
-            // Create new session
-            session = new ChatSession();
-            session.id = sessionId;
-            session.title = chatTitle;
-            session.messages = new ArrayList<>(messages);
-            session.timestamp = System.currentTimeMillis();
-            history.add(0, session);
-        }
-        
-        // Keep only last 50 chats
-        if (history.size() > 50) {
-            history = history.subList(0, 50);
+        return currentChatJournal.load();
+    }
+    
+    // Save chat to history (with timestamp); changedPositions are the stored positions whose
+    // message changed since the last save, or null to compare them all
+    public void saveToHistory(List<Message> messages, String chatTitle, String sessionId, Set<Integer> changedPositions) {
+        migrateLegacyHistory();
+        if (sessionId == null) {
+            sessionId = java.util.UUID.randomUUID().toString();
         }
-        
-        String json = gson.toJson(history);
-        sharedPreferences.edit().putString(KEY_CHAT_HISTORY, json).apply();
+        // Only messages added since the last save are written
+        database.saveSession(sessionId, chatTitle, messages, changedPositions);
     }
     
-    // Get all chat history
+    // Get all chat history, with every message of every session
     public List<ChatSession> getChatHistory() {
-        String json = sharedPreferences.getString(KEY_CHAT_HISTORY, null);
-        if (json == null) {
-            return new ArrayList<>();
+        migrateLegacyHistory();
+        return database.loadSessions();
+    }
+    
+    // Lightweight listing for the drawer: id, title, timestamp, message count and first prompt, no messages
+    public List<ChatSession> getSessionIndex() {
+        migrateLegacyHistory();
+        return database.loadSessionIndex();
+    }
+    
+    // Session index filtered to chats mentioning the query, matched on normalized text
+    // so spelling variants (yeh/kaf forms, harakat, digits) still find each other
+    public List<ChatSession> searchSessions(String query) {
+        String normalized = TextNormalizer.normalize(query);
+        if (normalized.isEmpty()) {
+            return getSessionIndex();
         }
-        
-        Type type = new TypeToken<List<ChatSession>>(){}.getType();
-        List<ChatSession> history = gson.fromJson(json, type);
-        // Migration: Assign IDs to old sessions if missing
-        if (history != null) {
-            for (ChatSession session : history) {
-                if (session.id == null) {
-                    session.id = java.util.UUID.randomUUID().toString();
+        migrateLegacyHistory();
+        return database.searchSessionIndex(normalized);
+    }
+    
+    // Messages of one session, loaded on demand
+    public List<Message> loadSessionMessages(String sessionId) {
+        migrateLegacyHistory();
+        return database.loadMessages(sessionId);
+    }
+    
+    // Move the old SharedPreferences JSON history into the database, once
+    private void migrateLegacyHistory() {
+        synchronized (ChatHistoryManager.class) {
+            String json = sharedPreferences.getString(KEY_CHAT_HISTORY, null);
+            if (json == null) {
+                return;
+            }
+            try {
+                Type type = new TypeToken<List<ChatSession>>(){}.getType();
+                List<ChatSession> history = gson.fromJson(json, type);
+                if (history != null) {
+                    database.importSessions(history);
                 }
+            } catch (Exception e) {
+                e.printStackTrace();
             }
+            sharedPreferences.edit().remove(KEY_CHAT_HISTORY).commit();
         }
-        return history != null ? history : new ArrayList<>();
     }
     
     // Clear current chat
     public void clearCurrentChat() {
         sharedPreferences.edit().remove(KEY_CURRENT_CHAT).remove("current_session_id").apply();
+        currentChatJournal.clear();
     }
     
     // Clear all history
     public void clearAllHistory() {
         sharedPreferences.edit().clear().apply();
+        currentChatJournal.clear();
+        database.clear();
     }
     
     public static class ChatSession {
@@ -133,6 +137,8 @@ public class ChatHistoryManager {
         public String title;
         public List<Message> messages;
         public long timestamp;
+        public int messageCount;
+        public String firstPrompt;
     }
 }
 
@@ -0,0 +1,312 @@
+package com.uos.sindhbot.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.uos.sindhbot.models.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single writer for everything ChatHistoryManager persists. Save requests only record the
+ * latest snapshot of the message list; one background thread writes it at most once per
+ * debounce window, so a burst of saves (user message, then bot reply) becomes one write
+ * and saves can no longer overtake each other.
+ *
+ * Each snapshot is compared with the previous one for the same session, and for the current
+ * chat (ids and text references, in memory), and only the positions that changed are handed
+ * to the database and the current chat journal, so neither has to read back or rewrite
+ * what is stored to find them, however far back the change is.
+ *
+ * History saves are pending per session, so switching chats within a debounce window
+ * still writes the session that was left.
+ */
+public class ChatPersistence {
+    private static final long DEBOUNCE_MS = 500;
+
+    private static ChatPersistence instance;
+
+    private final ChatHistoryManager chatHistoryManager;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Object lock = new Object();
+    private List<Message> pendingChat;
+    // Positions of pendingChat that differ from what is stored, null if unknown
+    private Set<Integer> pendingChatChanged;
+    // Sessions waiting to be written, in the order they were first saved
+    private final Map<String, PendingSession> pendingHistory = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledWrite;
+    // Last snapshot handed over per session; a session without one is compared in full once
+    private final Map<String, SavedList> savedHistory = new HashMap<>();
+    // Last snapshot handed over for the current chat, null when unknown
+    private SavedList savedChat;
+
+    private volatile Runnable onHistorySavedListener;
+
+    public static synchronized ChatPersistence getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatPersistence(new ChatHistoryManager(context.getApplicationContext()));
+        }
+        return instance;
+    }
+
+    private ChatPersistence(ChatHistoryManager chatHistoryManager) {
+        this.chatHistoryManager = chatHistoryManager;
+    }
+
+    // Called on the main thread after a history write
+    public synchronized void setOnHistorySavedListener(Runnable listener) {
+        onHistorySavedListener = listener;
+    }
+
+    // Only clears the listener if it is still the given one (a recreated activity may have replaced it)
+    public synchronized void removeOnHistorySavedListener(Runnable listener) {
+        if (onHistorySavedListener == listener) {
+            onHistorySavedListener = null;
+        }
+    }
+
+    public void saveCurrentChat(List<Message> messages) {
+        List<Message> snapshot = snapshot(messages);
+        synchronized (lock) {
+            setPendingChat(snapshot);
+            schedule(DEBOUNCE_MS);
+        }
+    }
+
+    // Saves the current chat as well; the session is only added to history once it has a user prompt
+    public void saveToHistory(List<Message> messages, String sessionId) {
+        List<Message> snapshot = snapshot(messages);
+        synchronized (lock) {
+            SavedList saved = savedHistory.get(sessionId);
+            Set<Integer> changed = saved != null ? saved.changedPositions(snapshot) : null;
+            PendingSession pending = pendingHistory.get(sessionId);
+            if (pending != null) {
+                // Not written yet, so what changed before still has to be written too
+                changed = merge(pending.changed, changed);
+            }
+            savedHistory.put(sessionId, new SavedList(snapshot));
+            setPendingChat(snapshot);
+            pendingHistory.put(sessionId, new PendingSession(snapshot, changed));
+            schedule(DEBOUNCE_MS);
+        }
+    }
+
+    // Write whatever is pending now instead of at the end of the debounce window
+    public void flush() {
+        synchronized (lock) {
+            if (pendingChat != null || !pendingHistory.isEmpty()) {
+                schedule(0);
+            }
+        }
+    }
+
+    public void clearCurrentChat() {
+        synchronized (lock) {
+            // A pending history write still belongs to the old session and is kept
+            pendingChat = null;
+            pendingChatChanged = null;
+            savedChat = new SavedList(Collections.<Message>emptyList());
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    chatHistoryManager.clearCurrentChat();
+                }
+            });
+        }
+    }
+
+    public void clearAllHistory() {
+        synchronized (lock) {
+            pendingChat = null;
+            pendingChatChanged = null;
+            savedChat = new SavedList(Collections.<Message>emptyList());
+            pendingHistory.clear();
+            savedHistory.clear();
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    chatHistoryManager.clearAllHistory();
+                }
+            });
+        }
+    }
+
+    // Called with lock held
+    private void setPendingChat(List<Message> snapshot) {
+        Set<Integer> changed = savedChat != null ? savedChat.changedPositions(snapshot) : null;
+        if (pendingChat != null) {
+            changed = merge(pendingChatChanged, changed);
+        }
+        savedChat = new SavedList(snapshot);
+        pendingChat = snapshot;
+        pendingChatChanged = changed;
+    }
+
+    private void schedule(long delayMs) {
+        if (scheduledWrite != null && !scheduledWrite.isDone()) {
+            if (delayMs > 0) {
+                // Already due within this window, it will pick up the newer snapshot
+                return;
+            }
+            scheduledWrite.cancel(false);
+        }
+        scheduledWrite = writer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void write() {
+        List<Message> chat;
+        Set<Integer> chatChanged;
+        Map<String, PendingSession> history;
+        synchronized (lock) {
+            chat = pendingChat;
+            chatChanged = pendingChatChanged;
+            history = new LinkedHashMap<>(pendingHistory);
+            pendingChat = null;
+            pendingChatChanged = null;
+            pendingHistory.clear();
+        }
+
+        if (chat != null) {
+            try {
+                chatHistoryManager.saveCurrentChat(chat, chatChanged);
+            } catch (Exception e) {
+                e.printStackTrace();
+                // What is stored is unknown now, the next save writes a fresh snapshot
+                synchronized (lock) {
+                    savedChat = null;
+                }
+            }
+        }
+
+        boolean historySaved = false;
+        for (Map.Entry<String, PendingSession> entry : history.entrySet()) {
+            String sessionId = entry.getKey();
+            PendingSession pending = entry.getValue();
+            try {
+                if (saveSession(pending.messages, sessionId, pending.changed)) {
+                    historySaved = true;
+                } else {
+                    forgetSaved(sessionId);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                // What is stored is unknown now, the next save compares everything
+                forgetSaved(sessionId);
+            }
+        }
+        if (historySaved) {
+            final Runnable listener = onHistorySavedListener;
+            if (listener != null) {
+                mainHandler.post(listener);
+            }
+        }
+    }
+
+    private void forgetSaved(String sessionId) {
+        synchronized (lock) {
+            savedHistory.remove(sessionId);
+        }
+    }
+
+    private boolean saveSession(List<Message> messages, String sessionId, Set<Integer> changed) {
+        // Title is the first user prompt
+        String firstPrompt = null;
+        for (Message message : messages) {
+            if (message.isUser()) {
+                firstPrompt = message.getText();
+                break;
+            }
+        }
+        if (firstPrompt == null || messages.size() <= 1) {
+            return false;
+        }
+        String title = firstPrompt.length() > 40 ? firstPrompt.substring(0, 40) + "..." : firstPrompt;
+        chatHistoryManager.saveToHistory(messages, title, sessionId, changed);
+        return true;
+    }
+
+    // Union of two change sets, where null (unknown) wins
+    private static Set<Integer> merge(Set<Integer> a, Set<Integer> b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        Set<Integer> union = new TreeSet<>(a);
+        union.addAll(b);
+        return union;
+    }
+
+    // Taken on the caller's thread, so the writer never touches the live list or its messages,
+    // which keep changing while an answer streams in. getId() runs here too, so a lazily
+    // assigned id is settled before another thread can see the message.
+    private static List<Message> snapshot(List<Message> messages) {
+        List<Message> copy = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            Message frozen = new Message(message.getText(), message.isUser(), message.getTimestamp(), message.getLanguage());
+            frozen.setId(message.getId());
+            copy.add(frozen);
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    // A session snapshot waiting for the writer, with the positions that differ from what is
+    // stored (null if unknown)
+    private static class PendingSession {
+        final List<Message> messages;
+        final Set<Integer> changed;
+
+        PendingSession(List<Message> messages, Set<Integer> changed) {
+            this.messages = messages;
+            this.changed = changed;
+        }
+    }
+
+    // Ids and texts of a snapshot, enough to tell which positions a later one changed
+    static class SavedList {
+        private final long[] ids;
+        private final String[] texts;
+
+        SavedList(List<Message> messages) {
+            ids = new long[messages.size()];
+            texts = new String[messages.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = messages.get(i).getId();
+                texts[i] = messages.get(i).getText();
+            }
+        }
+
+        // Positions both lists have that now hold another message or text; appended and
+        // dropped positions follow from the sizes
+        Set<Integer> changedPositions(List<Message> messages) {
+            Set<Integer> changed = new TreeSet<>();
+            int common = Math.min(ids.length, messages.size());
+            for (int i = 0; i < common; i++) {
+                Message message = messages.get(i);
+                String text = message.getText();
+                // Unchanged texts are the same String object, so equals returns on the first check
+                if (message.getId() != ids[i] || (text == null ? texts[i] != null : !text.equals(texts[i]))) {
+                    changed.add(i);
+                }
+            }
+            return changed;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.uos.sindhbot.utils;
+
+import android.content.Context;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.uos.sindhbot.models.Message;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Persists the active chat as a snapshot plus an append-only journal. Each save appends
+ * only the records for messages that changed since the previous save, so its cost does
+ * not grow with the length of the conversation. Once the journal outgrows the snapshot
+ * it is compacted into a new snapshot. Records address messages by position, so replaying
+ * a journal over a snapshot that already contains it gives the same list. Which persisted
+ * messages changed is told by the caller (ChatPersistence), at any distance from the end:
+ * a queued question's placeholder can get its answer long after newer messages were added.
+ */
+class CurrentChatJournal {
+    private static final String SNAPSHOT_FILE = "current_chat.snapshot";
+    private static final String JOURNAL_FILE = "current_chat.journal";
+    private static final int MIN_COMPACT_RECORDS = 64;
+
+    private static final String OP_ADD = "add";
+    private static final String OP_SET = "set";
+    private static final String OP_TRIM = "trim";
+
+    private static CurrentChatJournal instance;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final Gson gson = GsonProvider.get();
+
+    // What is on disk, tracked so a save only has to look at what was added or changed
+    private boolean loaded;
+    private int persistedCount;
+    // Compared by id, since ChatPersistence hands over a fresh copy of every message per save
+    private long persistedFirstId;
+    private int journalRecords;
+
+    static synchronized CurrentChatJournal getInstance(Context context) {
+        if (instance == null) {
+            instance = new CurrentChatJournal(context.getApplicationContext().getFilesDir());
+        }
+        return instance;
+    }
+
+    private CurrentChatJournal(File directory) {
+        snapshotFile = new File(directory, SNAPSHOT_FILE);
+        journalFile = new File(directory, JOURNAL_FILE);
+    }
+
+    synchronized boolean isEmpty() {
+        return !snapshotFile.exists() && !journalFile.exists();
+    }
+
+    // Snapshot followed by the journal tail; a torn last record from a crash is dropped
+    synchronized List<Message> load() {
+        List<Message> messages = readSnapshot();
+        int records = 0;
+        boolean torn = false;
+
+        if (journalFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Record record;
+                    try {
+                        record = gson.fromJson(line, Record.class);
+                    } catch (JsonParseException e) {
+                        torn = true;
+                        break;
+                    }
+                    if (record == null || record.op == null) {
+                        torn = true;
+                        break;
+                    }
+                    apply(messages, record);
+                    records++;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                torn = true;
+            }
+        }
+
+        track(messages, records);
+        if (torn) {
+            // Never append after a broken record
+            compact(messages);
+        }
+        return messages;
+    }
+
+    /**
+     * changedPositions are the positions below the persisted count whose message changed
+     * since the last save; null when that isn't known, which writes a fresh snapshot.
+     */
+    synchronized void save(List<Message> messages, Set<Integer> changedPositions) {
+        ensureLoaded();
+
+        int size = messages.size();
+        if (changedPositions == null
+                || (persistedCount > 0 && (size == 0 || messages.get(0).getId() != persistedFirstId))) {
+            // A different conversation was swapped in (or the changes are unknown), start over from a snapshot
+            compact(messages);
+            return;
+        }
+
+        List<Record> records = new ArrayList<>();
+        int from = persistedCount;
+        if (size < persistedCount) {
+            records.add(new Record(OP_TRIM, size, null));
+            from = size;
+        }
+        for (int i : changedPositions) {
+            if (i < from) {
+                records.add(new Record(OP_SET, i, messages.get(i)));
+            }
+        }
+        for (int i = from; i < size; i++) {
+            records.add(new Record(OP_ADD, i, messages.get(i)));
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+
+        if (journalRecords + records.size() > Math.max(MIN_COMPACT_RECORDS, size)) {
+            compact(messages);
+            return;
+        }
+        if (append(records)) {
+            track(messages, journalRecords + records.size());
+        } else {
+            compact(messages);
+        }
+    }
+
+    synchronized void replaceAll(List<Message> messages) {
+        compact(messages);
+    }
+
+    synchronized void clear() {
+        snapshotFile.delete();
+        journalFile.delete();
+        track(new ArrayList<Message>(), 0);
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            load();
+        }
+    }
+
+    private void apply(List<Message> messages, Record record) {
+        switch (record.op) {
+            case OP_ADD:
+            case OP_SET:
+                if (record.index < messages.size()) {
+                    messages.set(record.index, record.message);
+                } else if (record.index == messages.size()) {
+                    messages.add(record.message);
+                }
+                break;
+            case OP_TRIM:
+                while (messages.size() > record.index) {
+                    messages.remove(messages.size() - 1);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private boolean append(List<Record> records) {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(journalFile, true), StandardCharsets.UTF_8)) {
+            StringBuilder lines = new StringBuilder();
+            for (Record record : records) {
+                lines.append(gson.toJson(record)).append('\n');
+            }
+            writer.write(lines.toString());
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Write the whole list as the new snapshot (atomically, via rename) and start an empty journal
+    private void compact(List<Message> messages) {
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            gson.toJson(messages, writer);
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(snapshotFile)) {
+            temp.delete();
+            return;
+        }
+        journalFile.delete();
+        track(messages, 0);
+    }
+
+    private List<Message> readSnapshot() {
+        if (!snapshotFile.exists()) {
+            return new ArrayList<>();
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(snapshotFile), StandardCharsets.UTF_8)) {
+            Type type = new TypeToken<List<Message>>(){}.getType();
+            List<Message> messages = gson.fromJson(reader, type);
+            return messages != null ? messages : new ArrayList<Message>();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    private void track(List<Message> messages, int records) {
+        loaded = true;
+        persistedCount = messages.size();
+        persistedFirstId = persistedCount > 0 ? messages.get(0).getId() : 0;
+        journalRecords = records;
+    }
+
+    private static class Record {
+        String op;
+        int index;
+        Message message;
+
+        Record(String op, int index, Message message) {
+            this.op = op;
+            this.index = index;
+            this.message = message;
+        }
+    }
+}
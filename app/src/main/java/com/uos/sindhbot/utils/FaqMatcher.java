@@ -0,0 +1,157 @@
+package com.uos.sindhbot.utils;
+
+import android.content.Context;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * On-device copy of the backend's find_matching_faq, answering FAQ questions without
+ * a network round trip. Matching follows the same rules (exact/substring match, then
+ * keyword overlap against a 0.6 / 0.8 threshold, first FAQ in file order wins), but
+ * the overlap counts come from an inverted index instead of a scan over every FAQ.
+ */
+public class FaqMatcher {
+    // Copy of backend/faqs.json, keep the two in sync
+    private static final String FAQ_ASSET = "faqs.json";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // Same stop words as the backend
+    private static final Set<String> COMMON_WORDS = new HashSet<>(Arrays.asList(
+            "what", "is", "the", "are", "how", "can", "do", "does", "when", "where", "who",
+            "at", "in", "for", "a", "an", "to", "of", "and", "or", "hi", "hello", "hey"));
+
+    private static volatile FaqMatcher instance;
+
+    private final List<Faq> faqs;
+    private final String[] normalizedQuestions;
+    private final int[] keywordCounts;
+    // keyword -> indices of the FAQs containing it, in file order
+    private final Map<String, int[]> index;
+
+    public static FaqMatcher getInstance(Context context) {
+        if (instance == null) {
+            synchronized (FaqMatcher.class) {
+                if (instance == null) {
+                    instance = new FaqMatcher(loadFaqs(context.getApplicationContext()));
+                }
+            }
+        }
+        return instance;
+    }
+
+    FaqMatcher(List<Faq> faqs) {
+        this.faqs = faqs;
+        normalizedQuestions = new String[faqs.size()];
+        keywordCounts = new int[faqs.size()];
+
+        Map<String, List<Integer>> postings = new HashMap<>();
+        for (int i = 0; i < faqs.size(); i++) {
+            String question = faqs.get(i).question != null ? faqs.get(i).question : "";
+            normalizedQuestions[i] = TextNormalizer.normalize(question);
+            Set<String> keywords = keywords(normalizedQuestions[i]);
+            keywordCounts[i] = keywords.size();
+            for (String keyword : keywords) {
+                List<Integer> list = postings.get(keyword);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    postings.put(keyword, list);
+                }
+                list.add(i);
+            }
+        }
+
+        index = new HashMap<>(postings.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : postings.entrySet()) {
+            List<Integer> list = entry.getValue();
+            int[] ids = new int[list.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = list.get(i);
+            }
+            index.put(entry.getKey(), ids);
+        }
+    }
+
+    // Returns the matching FAQ, or null when the question should go to the backend
+    public Faq match(String question) {
+        if (question == null || faqs.isEmpty()) {
+            return null;
+        }
+        String questionLower = TextNormalizer.normalize(question);
+
+        Set<String> questionWords = keywords(questionLower);
+        int[] overlap = new int[faqs.size()];
+        for (String word : questionWords) {
+            int[] ids = index.get(word);
+            if (ids != null) {
+                for (int id : ids) {
+                    overlap[id]++;
+                }
+            }
+        }
+
+        // Require higher similarity for short queries
+        double threshold = questionWords.size() < 2 ? 0.8 : 0.6;
+        boolean substringCheck = questionLower.length() > 10;
+
+        for (int i = 0; i < faqs.size(); i++) {
+            String faqQuestion = normalizedQuestions[i];
+            if (questionLower.equals(faqQuestion) || (substringCheck && faqQuestion.contains(questionLower))) {
+                return faqs.get(i);
+            }
+
+            if (overlap[i] > 0) {
+                double similarity = (double) overlap[i] / Math.min(questionWords.size(), keywordCounts[i]);
+                if (similarity > threshold) {
+                    return faqs.get(i);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Set<String> keywords(String text) {
+        String filtered = text.replace("?", "").replace(".", "").trim();
+        Set<String> words = new HashSet<>();
+        if (filtered.isEmpty()) {
+            return words;
+        }
+        for (String word : WHITESPACE.split(filtered)) {
+            if (!COMMON_WORDS.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static List<Faq> loadFaqs(Context context) {
+        try (Reader reader = new InputStreamReader(context.getAssets().open(FAQ_ASSET), StandardCharsets.UTF_8)) {
+            FaqFile file = GsonProvider.get().fromJson(reader, FaqFile.class);
+            if (file != null && file.faqs != null) {
+                return file.faqs;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    public static class Faq {
+        public String question;
+        public String answer;
+    }
+
+    private static class FaqFile {
+        List<Faq> faqs;
+    }
+}
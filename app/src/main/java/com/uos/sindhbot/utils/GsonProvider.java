@@ -0,0 +1,326 @@
+package com.uos.sindhbot.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.uos.sindhbot.models.ApiResponse;
+import com.uos.sindhbot.models.AuthResponse;
+import com.uos.sindhbot.models.Message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The one Gson instance of the app, shared by Retrofit and everything that persists JSON.
+ * The models read on every answer and every history load get streaming adapters instead
+ * of reflection. They use the same JSON names as the fields, so data written before keeps
+ * loading; unknown names are skipped and nulls are left out, as reflection did.
+ */
+public class GsonProvider {
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(ApiResponse.class, new ApiResponseAdapter().nullSafe())
+            .registerTypeAdapter(AuthResponse.class, new AuthResponseAdapter().nullSafe())
+            .registerTypeAdapter(Message.class, new MessageAdapter().nullSafe())
+            .registerTypeAdapter(ChatHistoryManager.ChatSession.class, new ChatSessionAdapter().nullSafe())
+            .create();
+
+    public static Gson get() {
+        return GSON;
+    }
+
+    private static class ApiResponseAdapter extends TypeAdapter<ApiResponse> {
+        @Override
+        public void write(JsonWriter out, ApiResponse value) throws IOException {
+            out.beginObject();
+            writeString(out, "answer", value.getAnswer());
+            writeString(out, "source", value.getSource());
+            writeString(out, "language", value.getLanguage());
+            out.name("success").value(value.isSuccess());
+            writeString(out, "error", value.getError());
+            out.name("retryable").value(value.isRetryable());
+            out.endObject();
+        }
+
+        @Override
+        public ApiResponse read(JsonReader in) throws IOException {
+            ApiResponse response = new ApiResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "answer":
+                        response.setAnswer(readString(in));
+                        break;
+                    case "source":
+                        response.setSource(readString(in));
+                        break;
+                    case "language":
+                        response.setLanguage(readString(in));
+                        break;
+                    case "success":
+                        response.setSuccess(readBoolean(in));
+                        break;
+                    case "error":
+                        response.setError(readString(in));
+                        break;
+                    case "retryable":
+                        response.setRetryable(readBoolean(in));
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return response;
+        }
+    }
+
+    private static class AuthResponseAdapter extends TypeAdapter<AuthResponse> {
+        @Override
+        public void write(JsonWriter out, AuthResponse value) throws IOException {
+            out.beginObject();
+            out.name("success").value(value.isSuccess());
+            writeString(out, "message", value.getMessage());
+            writeString(out, "token", value.getToken());
+            AuthResponse.User user = value.getUser();
+            if (user != null) {
+                out.name("user").beginObject();
+                writeString(out, "user_id", user.getUser_id());
+                writeString(out, "full_name", user.getFull_name());
+                writeString(out, "email", user.getEmail());
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public AuthResponse read(JsonReader in) throws IOException {
+            AuthResponse response = new AuthResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "success":
+                        response.setSuccess(readBoolean(in));
+                        break;
+                    case "message":
+                        response.setMessage(readString(in));
+                        break;
+                    case "token":
+                        response.setToken(readString(in));
+                        break;
+                    case "user":
+                        response.setUser(readUser(in));
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return response;
+        }
+
+        private AuthResponse.User readUser(JsonReader in) throws IOException {
+            AuthResponse.User user = new AuthResponse.User();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "user_id":
+                        user.setUser_id(readString(in));
+                        break;
+                    case "full_name":
+                        user.setFull_name(readString(in));
+                        break;
+                    case "email":
+                        user.setEmail(readString(in));
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return user;
+        }
+    }
+
+    private static class MessageAdapter extends TypeAdapter<Message> {
+        @Override
+        public void write(JsonWriter out, Message value) throws IOException {
+            out.beginObject();
+            out.name("id").value(value.getId());
+            writeString(out, "text", value.getText());
+            out.name("isUser").value(value.isUser());
+            writeString(out, "timestamp", value.getTimestamp());
+            writeString(out, "language", value.getLanguage());
+            out.endObject();
+        }
+
+        @Override
+        public Message read(JsonReader in) throws IOException {
+            long id = 0;
+            String text = null;
+            boolean isUser = false;
+            String timestamp = null;
+            String language = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "id":
+                        id = in.nextLong();
+                        break;
+                    case "text":
+                        text = readString(in);
+                        break;
+                    case "isUser":
+                        isUser = readBoolean(in);
+                        break;
+                    case "timestamp":
+                        timestamp = readString(in);
+                        break;
+                    case "language":
+                        language = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            Message message = new Message(text, isUser, timestamp, language);
+            // Messages saved before ids existed keep the fresh one from the constructor
+            if (id != 0) {
+                message.setId(id);
+            }
+            return message;
+        }
+    }
+
+    private static class ChatSessionAdapter extends TypeAdapter<ChatHistoryManager.ChatSession> {
+        private final MessageAdapter messageAdapter = new MessageAdapter();
+
+        @Override
+        public void write(JsonWriter out, ChatHistoryManager.ChatSession value) throws IOException {
+            out.beginObject();
+            writeString(out, "id", value.id);
+            writeString(out, "title", value.title);
+            if (value.messages != null) {
+                out.name("messages").beginArray();
+                for (Message message : value.messages) {
+                    if (message == null) {
+                        out.nullValue();
+                    } else {
+                        messageAdapter.write(out, message);
+                    }
+                }
+                out.endArray();
+            }
+            out.name("timestamp").value(value.timestamp);
+            out.name("messageCount").value(value.messageCount);
+            writeString(out, "firstPrompt", value.firstPrompt);
+            out.endObject();
+        }
+
+        @Override
+        public ChatHistoryManager.ChatSession read(JsonReader in) throws IOException {
+            ChatHistoryManager.ChatSession session = new ChatHistoryManager.ChatSession();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "id":
+                        session.id = readString(in);
+                        break;
+                    case "title":
+                        session.title = readString(in);
+                        break;
+                    case "messages":
+                        session.messages = readMessages(in);
+                        break;
+                    case "timestamp":
+                        session.timestamp = in.nextLong();
+                        break;
+                    case "messageCount":
+                        session.messageCount = in.nextInt();
+                        break;
+                    case "firstPrompt":
+                        session.firstPrompt = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return session;
+        }
+
+        private List<Message> readMessages(JsonReader in) throws IOException {
+            List<Message> messages = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                if (skipNull(in)) {
+                    messages.add(null);
+                } else {
+                    messages.add(messageAdapter.read(in));
+                }
+            }
+            in.endArray();
+            return messages;
+        }
+    }
+
+    // Consumes a JSON null, leaving the field at its default the way reflection does
+    private static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    // Lenient like Gson's own String adapter: numbers and booleans are read as their text
+    private static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    private static boolean readBoolean(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.uos.sindhbot.utils;
+
+import android.text.Editable;
+import android.text.TextWatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * As-you-type language detection for an input field. Attached as a TextWatcher, it keeps
+ * per-script character counts that are adjusted only for the characters an edit removes
+ * or inserts, so a keystroke costs O(1) instead of a rescan of the whole text. The n-gram
+ * model (needed for Latin text and for Urdu/Sindhi ties) is only consulted at word
+ * boundaries, and once more by getLanguage() if the last word hasn't been scored yet.
+ * Its trigram costs are kept per completed word, so scoring reads only the words typed
+ * since the last time, and deleting back into earlier words drops just their scans.
+ */
+public class IncrementalLanguageDetector implements TextWatcher {
+
+    public interface OnLanguageChangedListener {
+        void onLanguageChanged(String language);
+    }
+
+    private int latin;
+    private int arabic;
+    private int sindhi;
+    private int urdu;
+
+    private CharSequence text = "";
+    private boolean boundaryEdited;
+    // Scans of the text up to the end of each completed word, oldest first; scans[0] is
+    // empty. Created on the first scoring, when the model is loaded
+    private NgramLanguageClassifier classifier;
+    private final List<NgramLanguageClassifier.Scan> scans = new ArrayList<>();
+    private NgramLanguageClassifier.Scan lastWord;
+    private float[] confidences;
+    // Model-based label, valid until the text changes without crossing a word boundary
+    private String modelLanguage;
+    private boolean modelStale;
+    private String language = "en";
+
+    private OnLanguageChangedListener listener;
+
+    public void setOnLanguageChangedListener(OnLanguageChangedListener listener) {
+        this.listener = listener;
+    }
+
+    // Current label, scoring the text with the model first if that is still pending
+    public String getLanguage() {
+        if (modelStale && needsModel()) {
+            refreshModelLanguage();
+            language = modelLanguage;
+        }
+        return language;
+    }
+
+    // Label as of the last edit, without running the model; cheap enough for every keystroke
+    public String peekLanguage() {
+        return language;
+    }
+
+    public boolean isEmpty() {
+        return latin == 0 && arabic == 0;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        count(s, start, start + count, -1);
+        // Scans that read past the edit no longer match the text
+        while (scans.size() > 1 && scans.get(scans.size() - 1).getPosition() > start) {
+            scans.remove(scans.size() - 1);
+            boundaryEdited = true;
+        }
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        count(s, start, start + count, 1);
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        text = s;
+        String previous = language;
+        if (!needsModel()) {
+            language = isEmpty() ? "en" : sindhi > urdu ? "sd" : "ur";
+            // Whatever the model said about earlier text no longer applies
+            modelLanguage = null;
+        } else if (boundaryEdited || modelLanguage == null) {
+            refreshModelLanguage();
+            language = modelLanguage;
+        } else {
+            // Mid-word, keep the last model label until the word is finished
+            modelStale = true;
+        }
+        boundaryEdited = false;
+
+        if (listener != null && !language.equals(previous)) {
+            listener.onLanguageChanged(language);
+        }
+    }
+
+    private void count(CharSequence s, int from, int to, int delta) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            switch (LanguageDetector.charClass(c)) {
+                case LanguageDetector.CLASS_LATIN:
+                    latin += delta;
+                    break;
+                case LanguageDetector.CLASS_SINDHI:
+                    sindhi += delta;
+                    arabic += delta;
+                    break;
+                case LanguageDetector.CLASS_URDU:
+                    urdu += delta;
+                    arabic += delta;
+                    break;
+                case LanguageDetector.CLASS_ARABIC:
+                    arabic += delta;
+                    break;
+                default:
+                    break;
+            }
+            if (!Character.isLetter(c)) {
+                boundaryEdited = true;
+            }
+        }
+    }
+
+    // Latin-only text and Urdu/Sindhi ties can't be settled from the counts
+    private boolean needsModel() {
+        return !isEmpty() && (arabic == 0 || sindhi == urdu);
+    }
+
+    private void refreshModelLanguage() {
+        modelStale = false;
+        if (classifier == null) {
+            classifier = NgramLanguageClassifier.getInstance();
+            if (classifier == null) {
+                modelLanguage = LanguageDetector.decide(null, -1, latin > 0, arabic > 0, sindhi, urdu);
+                return;
+            }
+            scans.add(classifier.newScan());
+            lastWord = classifier.newScan();
+            confidences = new float[classifier.getLanguageCount()];
+        }
+
+        // Completed words since the last scan get a scan of their own, the word being typed
+        // is scored on a scratch copy
+        NgramLanguageClassifier.Scan scan = scans.get(scans.size() - 1);
+        int wordEnd = text.length();
+        while (wordEnd > scan.getPosition() && isWordChar(text.charAt(wordEnd - 1))) {
+            wordEnd--;
+        }
+        if (wordEnd > scan.getPosition()) {
+            NgramLanguageClassifier.Scan words = classifier.newScan();
+            words.copyFrom(scan);
+            classifier.accumulate(text, scan.getPosition(), wordEnd, words);
+            scans.add(words);
+            scan = words;
+        }
+        lastWord.copyFrom(scan);
+        classifier.accumulate(text, wordEnd, text.length(), lastWord);
+        int best = classifier.classify(lastWord, confidences);
+        modelLanguage = LanguageDetector.decide(confidences, best, latin > 0, arabic > 0, sindhi, urdu);
+    }
+
+    // Letters and the marks typed on them; anything else ends a word
+    private static boolean isWordChar(char c) {
+        return Character.isLetter(c) || Character.getType(c) == Character.NON_SPACING_MARK;
+    }
+}
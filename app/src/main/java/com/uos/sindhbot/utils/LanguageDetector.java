@@ -1,44 +1,256 @@
 package com.uos.sindhbot.utils;
 
-import java.util.regex.Pattern;
+import com.uos.sindhbot.models.TextSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 public class LanguageDetector {
     
-    // Patterns for Urdu (Arabic script)
-    private static final Pattern URDU_PATTERN = Pattern.compile(".*[\\u0600-\\u06FF\\u0750-\\u077F\\u08A0-\\u08FF\\uFB50-\\uFDFF\\uFE70-\\uFEFF].*");
+    // Urdu / Sindhi typed in the Latin alphabet
+    public static final String ROMAN_URDU = "ur-Latn";
+    public static final String ROMAN_SINDHI = "sd-Latn";
+    
+    // Latin text is only labelled Roman Urdu/Sindhi when the n-gram model is this sure
+    private static final float MIN_ROMAN_CONFIDENCE = 0.8f;
+    
+    // Bitsets over the Arabic block U+0600..U+06FF (one bit per code point)
+    private static final int ARABIC_BASE = 0x0600;
+    private static final long[] SINDHI_LETTERS = new long[4];
+    private static final long[] URDU_LETTERS = new long[4];
+    
+    // Character classes, also used by IncrementalLanguageDetector
+    static final int CLASS_OTHER = 0;
+    static final int CLASS_LATIN = 1;
+    // Arabic script letters (and punctuation) common to Urdu and Sindhi
+    static final int CLASS_ARABIC = 2;
+    static final int CLASS_SINDHI = 3;
+    static final int CLASS_URDU = 4;
     
-    // Patterns for Sindhi (Arabic script with specific characters)
-    private static final Pattern SINDHI_PATTERN = Pattern.compile(".*[\\u0600-\\u06FF\\u0750-\\u077F].*");
+    // Stop scanning once one side is this far ahead, the rest of the text won't change the answer
+    private static final int DECISIVE_LEAD = 3;
+    
+    // Scratch space for the classifier, so detection doesn't allocate per call
+    private static final ThreadLocal<float[]> CONFIDENCES = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            NgramLanguageClassifier classifier = NgramLanguageClassifier.getInstance();
+            return new float[classifier != null ? classifier.getLanguageCount() : 0];
+        }
+    };
+    
+    static {
+        // Letters Sindhi has but Urdu doesn't (implosives, aspirated/retroflex forms, ڪ, ڻ ...)
+        mark(SINDHI_LETTERS, "ٻٺٽٿڀڃڄڇڊڌڍڏڙڦڪڱڳڻ");
+        // Letters Urdu uses that Sindhi doesn't
+        mark(URDU_LETTERS, "ٹڈڑںہۃےۓ");
+    }
     
     public static String detectLanguage(String text) {
-        if (text == null || text.trim().isEmpty()) {
+        if (text == null) {
             return "en";
         }
         
-        // Check for Urdu/Sindhi (Arabic script)
-        if (URDU_PATTERN.matcher(text).matches()) {
-            // Try to distinguish between Urdu and Sindhi
-            // This is a simplified detection - you may need more sophisticated logic
-            if (containsSindhiSpecificChars(text)) {
-                return "sd"; // Sindhi
+        // Single pass, no allocation: classify each char against the tables
+        boolean arabicScript = false;
+        boolean latin = false;
+        int sindhi = 0;
+        int urdu = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            switch (charClass(text.charAt(i))) {
+                case CLASS_LATIN:
+                    latin = true;
+                    continue;
+                case CLASS_SINDHI:
+                    sindhi++;
+                    break;
+                case CLASS_URDU:
+                    urdu++;
+                    break;
+                case CLASS_ARABIC:
+                    break;
+                default:
+                    continue;
+            }
+            arabicScript = true;
+            if (sindhi - urdu >= DECISIVE_LEAD) {
+                return "sd";
+            }
+            if (urdu - sindhi >= DECISIVE_LEAD) {
+                return "ur";
             }
-            return "ur"; // Urdu
         }
-        
-        // Default to English
+        return decide(text, latin, arabicScript, sindhi, urdu);
+    }
+    
+    // Final label from the script counts; only ties and Latin text need the n-gram model
+    static String decide(CharSequence text, boolean latin, boolean arabicScript, int sindhi, int urdu) {
+        float[] confidences = null;
+        int best = -1;
+        if (arabicScript ? sindhi == urdu : latin) {
+            NgramLanguageClassifier classifier = NgramLanguageClassifier.getInstance();
+            if (classifier != null) {
+                confidences = CONFIDENCES.get();
+                best = classifier.classify(text, confidences);
+            }
+        }
+        return decide(confidences, best, latin, arabicScript, sindhi, urdu);
+    }
+    
+    // decide() with the model already run over the text (best is -1 when it wasn't, or had
+    // nothing to go on), for callers that keep their own scan of it
+    static String decide(float[] confidences, int best, boolean latin, boolean arabicScript, int sindhi, int urdu) {
+        if (!arabicScript) {
+            // Roman Urdu/Sindhi look like English to the tables, let the n-gram model decide
+            if (latin) {
+                String roman = mostLikely(confidences, best, ROMAN_URDU, ROMAN_SINDHI);
+                if (roman != null) {
+                    return roman;
+                }
+            }
+            // Default to English
+            return "en";
+        }
+        if (sindhi == urdu) {
+            // No letter that tells them apart, fall back to the n-gram model
+            String language = mostLikely(confidences, best, "ur", "sd");
+            if ("sd".equals(language)) {
+                return "sd";
+            }
+        }
+        return sindhi > urdu ? "sd" : "ur";
+    }
+    
+    /**
+     * Splits text into runs of a single script in one pass, e.g. English terms inside a
+     * Sindhi sentence. Spaces, digits and punctuation stay with the run they follow.
+     * Latin runs in mixed text are labelled English; text that is Latin throughout keeps
+     * messageLanguage (Roman Urdu/Sindhi).
+     */
+    public static List<TextSegment> segment(String text, String messageLanguage) {
+        List<TextSegment> segments = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return segments;
+        }
+        int runStart = 0;
+        int runScript = CLASS_OTHER;
+        int sindhi = 0;
+        int urdu = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            int charClass = charClass(c);
+            // Only letters switch runs; Arabic punctuation and digits are neutral too
+            if (charClass == CLASS_OTHER || !Character.isLetter(c)) {
+                continue;
+            }
+            int script = charClass == CLASS_LATIN ? CLASS_LATIN : CLASS_ARABIC;
+            if (runScript != CLASS_OTHER && script != runScript) {
+                segments.add(new TextSegment(text.substring(runStart, i),
+                        runLanguage(runScript, sindhi, urdu, messageLanguage, false)));
+                runStart = i;
+                sindhi = 0;
+                urdu = 0;
+            }
+            runScript = script;
+            if (charClass == CLASS_SINDHI) {
+                sindhi++;
+            } else if (charClass == CLASS_URDU) {
+                urdu++;
+            }
+        }
+        segments.add(new TextSegment(text.substring(runStart),
+                runLanguage(runScript, sindhi, urdu, messageLanguage, segments.isEmpty())));
+        return segments;
+    }
+    
+    private static String runLanguage(int script, int sindhi, int urdu, String messageLanguage, boolean wholeText) {
+        if (script == CLASS_ARABIC) {
+            if (sindhi != urdu) {
+                return sindhi > urdu ? "sd" : "ur";
+            }
+            return "sd".equals(messageLanguage) ? "sd" : "ur";
+        }
+        if (wholeText && (ROMAN_URDU.equals(messageLanguage) || ROMAN_SINDHI.equals(messageLanguage))) {
+            return messageLanguage;
+        }
         return "en";
     }
     
-    private static boolean containsSindhiSpecificChars(String text) {
-        // Sindhi-specific characters (simplified check)
-        // You can expand this with actual Sindhi character ranges
-        String sindhiChars = "ڄڃڇڊڋڌڍڎڏڐڑڒړڔڕږڗڙښڛڜڝڞڟڠڡڢڣڤڥڦڧڨکڪګڬڭڮگڰڱڲڳڴڵڶڷڸڹںڻڼڽھڿہۂۃۄۅۆۇۈۉۊۋیۍێۏېۑےۓ";
-        for (char c : text.toCharArray()) {
-            if (sindhiChars.indexOf(c) != -1) {
-                return true;
+    static int charClass(char c) {
+        if (c < ARABIC_BASE) {
+            char lower = (char) (c | 0x20);
+            return lower >= 'a' && lower <= 'z' ? CLASS_LATIN : CLASS_OTHER;
+        }
+        int offset = c - ARABIC_BASE;
+        if (offset < 0x100) {
+            if (contains(SINDHI_LETTERS, offset)) {
+                return CLASS_SINDHI;
+            }
+            if (contains(URDU_LETTERS, offset)) {
+                return CLASS_URDU;
             }
+            return CLASS_ARABIC;
+        }
+        return isArabicSupplement(c) ? CLASS_ARABIC : CLASS_OTHER;
+    }
+    
+    // Voice to preselect for text in the given language
+    public static Locale getSpeechLocale(String code) {
+        switch (code) {
+            case "ur":
+                return new Locale("ur", "PK");
+            case "sd":
+                return new Locale("sd", "PK");
+            case ROMAN_URDU:
+            case ROMAN_SINDHI:
+                // Latin-script Urdu/Sindhi reads best with an Indian English voice
+                return new Locale("en", "IN");
+            default:
+                return Locale.US;
+        }
+    }
+    
+    /**
+     * Per-language confidences from the n-gram model, indexed like
+     * NgramLanguageClassifier.getLanguage. Returns null if the model is unavailable
+     * or the text has no letters.
+     */
+    public static float[] classify(String text) {
+        NgramLanguageClassifier classifier = NgramLanguageClassifier.getInstance();
+        if (classifier == null || text == null) {
+            return null;
+        }
+        float[] confidences = new float[classifier.getLanguageCount()];
+        return classifier.classify(text, confidences) == -1 ? null : confidences;
+    }
+    
+    // Whichever of the two candidates the model picks with MIN_ROMAN_CONFIDENCE, or null
+    private static String mostLikely(float[] confidences, int best, String first, String second) {
+        if (best == -1 || confidences[best] < MIN_ROMAN_CONFIDENCE) {
+            return null;
+        }
+        String language = NgramLanguageClassifier.getInstance().getLanguage(best);
+        return language.equals(first) || language.equals(second) ? language : null;
+    }
+    
+    // Arabic Supplement, Extended-A and the presentation forms
+    private static boolean isArabicSupplement(char c) {
+        return (c >= 0x0750 && c <= 0x077F)
+                || (c >= 0x08A0 && c <= 0x08FF)
+                || (c >= 0xFB50 && c <= 0xFDFF)
+                || (c >= 0xFE70 && c <= 0xFEFF);
+    }
+    
+    private static boolean contains(long[] bits, int offset) {
+        return (bits[offset >>> 6] & (1L << (offset & 63))) != 0;
+    }
+    
+    private static void mark(long[] bits, String letters) {
+        for (int i = 0; i < letters.length(); i++) {
+            int offset = letters.charAt(i) - ARABIC_BASE;
+            bits[offset >>> 6] |= 1L << (offset & 63);
         }
-        return false;
     }
     
     public static String getLanguageName(String code) {
@@ -49,9 +261,12 @@ public class LanguageDetector {
                 return "Urdu";
             case "sd":
                 return "Sindhi";
+            case ROMAN_URDU:
+                return "Roman Urdu";
+            case ROMAN_SINDHI:
+                return "Roman Sindhi";
             default:
                 return "English";
         }
     }
 }
-
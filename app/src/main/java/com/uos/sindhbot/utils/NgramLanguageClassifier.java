@@ -0,0 +1,234 @@
+package com.uos.sindhbot.utils;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Character-trigram language classifier. The model is a table of quantized
+ * -log P(trigram | language) costs, one byte per hashed trigram bucket and language,
+ * built by tools/language_model/build_language_model.py and bundled as a Java
+ * resource. It is read on first use. Classifying walks the text once and does
+ * one array lookup per trigram and language, without allocating. A Scan keeps the running
+ * costs, so text that grows at the end (an input field) is only read once.
+ */
+public class NgramLanguageClassifier {
+    private static final String MODEL_RESOURCE = "language_trigrams.bin";
+    private static final int MAGIC = 0x4C4E4731;
+
+    private final String[] languages;
+    private final int bucketMask;
+    private final int bucketCount;
+    private final float scale;
+    // costs[language * bucketCount + bucket], unsigned
+    private final byte[] costs;
+
+    // Scratch scan for classify(CharSequence), so classifying doesn't allocate per call
+    private final ThreadLocal<Scan> scratch = new ThreadLocal<Scan>() {
+        @Override
+        protected Scan initialValue() {
+            return newScan();
+        }
+    };
+
+    // Loaded by the class loader the first time getInstance is called
+    private static class Holder {
+        static final NgramLanguageClassifier INSTANCE = load();
+    }
+
+    // null when the model could not be read
+    public static NgramLanguageClassifier getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private NgramLanguageClassifier(String[] languages, int bucketBits, int scale, byte[] costs) {
+        this.languages = languages;
+        this.bucketCount = 1 << bucketBits;
+        this.bucketMask = bucketCount - 1;
+        this.scale = scale;
+        this.costs = costs;
+    }
+
+    public int getLanguageCount() {
+        return languages.length;
+    }
+
+    public String getLanguage(int index) {
+        return languages[index];
+    }
+
+    public int indexOf(String language) {
+        for (int i = 0; i < languages.length; i++) {
+            if (languages[i].equals(language)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fills confidences (at least getLanguageCount() long) with the probability of each
+     * language, in getLanguage order, and returns the index of the most likely one.
+     * Returns -1 and leaves confidences untouched when the text has no letters.
+     */
+    public int classify(CharSequence text, float[] confidences) {
+        Scan scan = scratch.get();
+        scan.reset();
+        accumulate(text, 0, text.length(), scan);
+        return classify(scan, confidences);
+    }
+
+    public Scan newScan() {
+        return new Scan(languages.length);
+    }
+
+    // Feeds text[from, to) to the scan, adding the cost of every trigram it completes. Same
+    // normalization as the model builder: lowercase letters, marks dropped, anything else
+    // is a single space, and the text is padded with spaces
+    public void accumulate(CharSequence text, int from, int to, Scan scan) {
+        int languageCount = languages.length;
+        float[] costs = scan.costs;
+        char a = scan.a;
+        char b = scan.b;
+        int emitted = scan.emitted;
+        int trigrams = scan.trigrams;
+        for (int i = from; i < to; i++) {
+            char raw = text.charAt(i);
+            if (Character.getType(raw) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            char c = Character.isLetter(raw) ? Character.toLowerCase(raw) : ' ';
+            if (c == ' ' && b == ' ') {
+                continue;
+            }
+            if (emitted >= 2) {
+                int bucket = ((a * 31 + b) * 31 + c) & bucketMask;
+                for (int l = 0; l < languageCount; l++) {
+                    costs[l] += cost(l, bucket);
+                }
+                trigrams++;
+            }
+            a = b;
+            b = c;
+            emitted++;
+        }
+        scan.a = a;
+        scan.b = b;
+        scan.emitted = emitted;
+        scan.trigrams = trigrams;
+        scan.position = to;
+    }
+
+    /**
+     * classify() for the text fed to scan so far, as if it ended there; the scan itself is
+     * left as it is, so more text can be fed to it afterwards.
+     */
+    public int classify(Scan scan, float[] confidences) {
+        int languageCount = languages.length;
+        // Summed costs are kept in the output array until they are turned into probabilities
+        System.arraycopy(scan.costs, 0, confidences, 0, languageCount);
+        int trigrams = scan.trigrams;
+        if (scan.b != ' ' && scan.emitted >= 2) {
+            // The closing space of the padding
+            int bucket = ((scan.a * 31 + scan.b) * 31 + ' ') & bucketMask;
+            for (int l = 0; l < languageCount; l++) {
+                confidences[l] += cost(l, bucket);
+            }
+            trigrams++;
+        }
+        if (trigrams == 0) {
+            return -1;
+        }
+
+        // Costs are -log P * scale, softmax over the negated totals
+        float best = Float.MAX_VALUE;
+        int bestIndex = 0;
+        for (int l = 0; l < languageCount; l++) {
+            if (confidences[l] < best) {
+                best = confidences[l];
+                bestIndex = l;
+            }
+        }
+        float sum = 0f;
+        for (int l = 0; l < languageCount; l++) {
+            confidences[l] = (float) Math.exp((best - confidences[l]) / scale);
+            sum += confidences[l];
+        }
+        for (int l = 0; l < languageCount; l++) {
+            confidences[l] /= sum;
+        }
+        return bestIndex;
+    }
+
+    private int cost(int language, int bucket) {
+        return costs[language * bucketCount + bucket] & 0xFF;
+    }
+
+    /**
+     * Trigram costs of a text read from the start up to position, and the last two
+     * normalized chars, so text appended later is scored without reading the start again.
+     */
+    public static class Scan {
+        private final float[] costs;
+        private char a;
+        private char b;
+        private int emitted;
+        private int trigrams;
+        private int position;
+
+        private Scan(int languageCount) {
+            costs = new float[languageCount];
+            reset();
+        }
+
+        // Chars of the text fed so far
+        public int getPosition() {
+            return position;
+        }
+
+        public void reset() {
+            for (int l = 0; l < costs.length; l++) {
+                costs[l] = 0f;
+            }
+            a = 0;
+            b = ' ';
+            emitted = 1;
+            trigrams = 0;
+            position = 0;
+        }
+
+        public void copyFrom(Scan other) {
+            System.arraycopy(other.costs, 0, costs, 0, costs.length);
+            a = other.a;
+            b = other.b;
+            emitted = other.emitted;
+            trigrams = other.trigrams;
+            position = other.position;
+        }
+    }
+
+    private static NgramLanguageClassifier load() {
+        InputStream stream = NgramLanguageClassifier.class.getResourceAsStream(MODEL_RESOURCE);
+        if (stream == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(stream)) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int languageCount = in.readInt();
+            int bucketBits = in.readInt();
+            int scale = in.readInt();
+            String[] languages = new String[languageCount];
+            for (int i = 0; i < languageCount; i++) {
+                languages[i] = in.readUTF();
+            }
+            byte[] costs = new byte[languageCount << bucketBits];
+            in.readFully(costs);
+            return new NgramLanguageClassifier(languages, bucketBits, scale, costs);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
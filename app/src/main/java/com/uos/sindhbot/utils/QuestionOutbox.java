@@ -0,0 +1,323 @@
+package com.uos.sindhbot.utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.gson.Gson;
+import com.uos.sindhbot.R;
+import com.uos.sindhbot.api.QuestionBatcher;
+import com.uos.sindhbot.models.ApiRequest;
+import com.uos.sindhbot.models.ApiResponse;
+import com.uos.sindhbot.models.Message;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable queue for questions that failed to send. Each entry is stored in the chat database
+ * with its session and the id of the placeholder message shown in place of the answer. Entries
+ * are replayed oldest first through QuestionBatcher, so a backlog goes out as one batch call;
+ * against a server without the batch endpoint at most MAX_IN_FLIGHT are sent at a time.
+ * Failed attempts back off exponentially with jitter, and when the network comes back
+ * everything pending is retried at once. Network failures are retried for as long as it
+ * takes; server errors only MAX_ATTEMPTS times.
+ * An answer replaces its placeholder in the stored session right away and is handed to the
+ * chat on screen through OnAnswerListener, or picked up with applyDeliveredAnswers when the
+ * chat is next loaded. A question the server won't answer gets the same treatment, with a
+ * "couldn't answer" note in place of the answer, so the error text never poses as one.
+ */
+public class QuestionOutbox {
+    private static final int MAX_IN_FLIGHT = 2;
+    // Server errors retried this many times before the question is given up on
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_DELAY_MS = 2000;
+    private static final long MAX_DELAY_MS = 5 * 60 * 1000;
+    private static final long DELIVERED_RETENTION_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static QuestionOutbox instance;
+
+    public interface OnAnswerListener {
+        // Called on the main thread; call acknowledge(entryId) once the answer is in the chat
+        void onAnswer(long entryId, String sessionId, long messageId, String answer);
+
+        // The question was given up on and text (not an answer) replaced the placeholder;
+        // error is what the server said, for showing to the user. Acknowledge it the same way.
+        void onFailed(long entryId, String sessionId, long messageId, String text, String error);
+    }
+
+    // Row of the outbox table
+    static class Entry {
+        long id;
+        String sessionId;
+        long messageId;
+        String request;
+        int attempts;
+        long nextAttempt;
+        String answer;
+    }
+
+    private final Context context;
+    private final ChatHistoryDatabase database;
+    private final Gson gson = GsonProvider.get();
+    private final Random random = new Random();
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Worker thread only
+    private final Set<Long> inFlight = new HashSet<>();
+    private ScheduledFuture<?> wakeUp;
+
+    private volatile OnAnswerListener onAnswerListener;
+
+    public static synchronized QuestionOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new QuestionOutbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private QuestionOutbox(Context context) {
+        this.context = context;
+        this.database = ChatHistoryDatabase.getInstance(context);
+
+        ConnectivityManager connectivity = context.getSystemService(ConnectivityManager.class);
+        if (connectivity != null) {
+            connectivity.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    worker.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            database.resetOutboxBackoff();
+                            replay();
+                        }
+                    });
+                }
+            });
+        }
+
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                database.purgeDeliveredOutbox(System.currentTimeMillis() - DELIVERED_RETENTION_MS);
+                replay();
+            }
+        });
+    }
+
+    public synchronized void setOnAnswerListener(OnAnswerListener listener) {
+        onAnswerListener = listener;
+    }
+
+    public synchronized void removeOnAnswerListener(OnAnswerListener listener) {
+        if (onAnswerListener == listener) {
+            onAnswerListener = null;
+        }
+    }
+
+    // Queue a question whose answer should replace the given placeholder message
+    public void enqueue(ApiRequest request, final String sessionId, final long messageId) {
+        final String json = gson.toJson(request);
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                // It just failed, give the connection a moment before the first retry
+                database.insertOutboxEntry(sessionId, messageId, json, System.currentTimeMillis() + BASE_DELAY_MS);
+                replay();
+            }
+        });
+    }
+
+    // The chat has the answer now, the entry can go
+    public void acknowledge(final long entryId) {
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                database.deleteOutboxEntry(entryId);
+            }
+        });
+    }
+
+    /**
+     * Puts answers that arrived while the chat wasn't on screen into freshly loaded messages.
+     * Blocking; call it on the thread that loaded them. Returns true if any message changed,
+     * in which case the caller should save the list.
+     */
+    public boolean applyDeliveredAnswers(List<Message> messages) {
+        boolean changed = false;
+        for (Entry entry : database.loadDeliveredOutbox()) {
+            for (Message message : messages) {
+                if (message.getId() == entry.messageId) {
+                    message.setText(entry.answer);
+                    acknowledge(entry.id);
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+
+    // Worker thread: start every due entry there is room for and sleep until the next one
+    private void replay() {
+        if (!isOnline()) {
+            // The network callback starts the next round
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long nextWake = Long.MAX_VALUE;
+        for (Entry entry : database.loadPendingOutbox()) {
+            if (inFlight.contains(entry.id)) {
+                continue;
+            }
+            if (entry.nextAttempt > now) {
+                nextWake = Math.min(nextWake, entry.nextAttempt);
+                continue;
+            }
+            if (inFlight.size() >= maxInFlight()) {
+                // Picked up when a slot frees
+                break;
+            }
+            send(entry);
+        }
+        scheduleWakeUp(nextWake == Long.MAX_VALUE ? -1 : nextWake - now);
+    }
+
+    private void send(final Entry entry) {
+        inFlight.add(entry.id);
+        ApiRequest request = gson.fromJson(entry.request, ApiRequest.class);
+        QuestionBatcher.ask(request, new QuestionBatcher.Callback() {
+            @Override
+            public void onAnswer(final ApiResponse body) {
+                worker.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (body.isSuccess()) {
+                            deliver(entry, body.getAnswerWithSource());
+                        } else if (body.isRetryable()) {
+                            // A transient error inside a batch, where /api/ask would have sent a 500
+                            retryOrFail(entry, body.getError());
+                        } else {
+                            // The live path doesn't retry these either
+                            fail(entry, body.getError());
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onHttpError(final int code) {
+                worker.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isRetryable(code)) {
+                            retryOrFail(entry, null);
+                        } else {
+                            fail(entry, null);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                worker.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        retry(entry);
+                    }
+                });
+            }
+        });
+    }
+
+    private void deliver(final Entry entry, final String answer) {
+        database.deliverOutboxEntry(entry, answer);
+        inFlight.remove(entry.id);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                OnAnswerListener listener = onAnswerListener;
+                if (listener != null) {
+                    listener.onAnswer(entry.id, entry.sessionId, entry.messageId, answer);
+                }
+            }
+        });
+        replay();
+    }
+
+    // Gives up on the question: the placeholder says so instead of waiting forever
+    private void fail(final Entry entry, String error) {
+        final String text = context.getString(R.string.queued_failed);
+        final String shownError = error != null ? error : context.getString(R.string.error_generic);
+        database.deliverOutboxEntry(entry, text);
+        inFlight.remove(entry.id);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                OnAnswerListener listener = onAnswerListener;
+                if (listener != null) {
+                    listener.onFailed(entry.id, entry.sessionId, entry.messageId, text, shownError);
+                }
+            }
+        });
+        replay();
+    }
+
+    private void retryOrFail(Entry entry, String error) {
+        if (entry.attempts + 1 >= MAX_ATTEMPTS) {
+            fail(entry, error);
+        } else {
+            retry(entry);
+        }
+    }
+
+    private void retry(Entry entry) {
+        int attempts = entry.attempts + 1;
+        // Exponential with equal jitter, so phones that lost the same Wi-Fi don't retry in lockstep
+        long delay = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << Math.min(attempts, 16));
+        long jittered = delay / 2 + (long) (random.nextDouble() * (delay / 2));
+        database.rescheduleOutboxEntry(entry.id, attempts, System.currentTimeMillis() + jittered);
+        inFlight.remove(entry.id);
+        replay();
+    }
+
+    private void scheduleWakeUp(long delayMs) {
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+            wakeUp = null;
+        }
+        if (delayMs < 0) {
+            return;
+        }
+        wakeUp = worker.schedule(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static int maxInFlight() {
+        return QuestionBatcher.isBatchSupported() ? QuestionBatcher.MAX_BATCH_SIZE : MAX_IN_FLIGHT;
+    }
+
+    private boolean isOnline() {
+        ConnectivityManager connectivity = context.getSystemService(ConnectivityManager.class);
+        return connectivity != null && connectivity.getActiveNetwork() != null;
+    }
+
+    // Timeouts, rate limiting and server errors (a Render instance still starting) are worth retrying
+    private static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+}
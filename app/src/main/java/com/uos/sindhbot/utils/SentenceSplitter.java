@@ -0,0 +1,97 @@
+package com.uos.sindhbot.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits answers into sentence-sized chunks for speech. Sentences end at . ! ? and
+ * newlines, and at the Urdu/Sindhi full stop (۔) and question mark (؟). A sentence that
+ * is longer than the engine accepts is cut at the last space that fits.
+ */
+public class SentenceSplitter {
+
+    public static List<String> split(CharSequence text, int maxLength) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null) {
+            return chunks;
+        }
+        int start = 0;
+        int length = text.length();
+        while (start < length) {
+            int end = findBoundary(text, start);
+            if (end == -1) {
+                end = length;
+            }
+            addChunks(chunks, text, start, end, maxLength);
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Index just past the first sentence end at or after from (including trailing
+     * closing punctuation), or -1 if the text from there on is not a complete sentence yet.
+     */
+    public static int findBoundary(CharSequence text, int from) {
+        int length = text.length();
+        for (int i = from; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '۔' || c == '؟' || c == '!' || c == '?') {
+                return skipClosing(text, i + 1);
+            }
+            // A period only ends a sentence when followed by space, not in "3.5" or "www.usindh.edu.pk"
+            if (c == '.' && i + 1 < length && Character.isWhitespace(text.charAt(i + 1))) {
+                return skipClosing(text, i + 1);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Index just past the first clause break (, ، ; ؛ followed by a space) at or after from,
+     * or -1. Lets a long first sentence start speaking before its end has arrived.
+     */
+    public static int findClauseBreak(CharSequence text, int from) {
+        for (int i = from, length = text.length(); i + 1 < length; i++) {
+            char c = text.charAt(i);
+            if ((c == ',' || c == '،' || c == ';' || c == '؛') && Character.isWhitespace(text.charAt(i + 1))) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipClosing(CharSequence text, int index) {
+        while (index < text.length()) {
+            char c = text.charAt(index);
+            if (c != '"' && c != '\'' && c != ')' && c != '.' && c != '!' && c != '?') {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+
+    private static void addChunks(List<String> chunks, CharSequence text, int start, int end, int maxLength) {
+        while (end - start > maxLength) {
+            int cut = start + maxLength;
+            while (cut > start && !Character.isWhitespace(text.charAt(cut))) {
+                cut--;
+            }
+            if (cut == start) {
+                // One very long word, cut it anyway
+                cut = start + maxLength;
+            }
+            addTrimmed(chunks, text, start, cut);
+            start = cut;
+        }
+        addTrimmed(chunks, text, start, end);
+    }
+
+    private static void addTrimmed(List<String> chunks, CharSequence text, int start, int end) {
+        String chunk = text.subSequence(start, end).toString().trim();
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+    }
+}
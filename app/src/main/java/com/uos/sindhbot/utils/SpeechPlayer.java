@@ -0,0 +1,471 @@
+package com.uos.sindhbot.utils;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.Looper;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+
+import com.uos.sindhbot.models.Message;
+import com.uos.sindhbot.models.TextSegment;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads bot answers aloud. An answer is split into sentences (and those into script runs,
+ * each with its own voice), every piece is synthesized to a file and the files are played
+ * in order as soon as each one is ready, so speech starts after the first sentence rather
+ * than after the whole answer. The files are kept per (message id, locale) under the cache
+ * dir with LRU eviction, so speaking the same answer again just plays them back; the
+ * complete marker records a hash of the text, so a message whose text changed is synthesized
+ * again.
+ *
+ * An answer that is still streaming in is read with startStream/appendStream/finishStream:
+ * every sentence is queued for synthesis as soon as its end (including ۔ and ؟) arrives.
+ */
+public class SpeechPlayer {
+    private static final String CACHE_DIR = "tts";
+    private static final String COMPLETE_MARKER = "complete";
+    private static final long MAX_CACHE_BYTES = 20L * 1024 * 1024;
+    // A first sentence longer than this starts at a clause break instead of waiting for its end
+    private static final int FIRST_CHUNK_CHARS = 80;
+
+    private final TextToSpeech textToSpeech;
+    private final File cacheRoot;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+
+    private boolean ready;
+    // Bumped on every speak/stop; callbacks from an older run are ignored
+    private int generation;
+    private File currentDir;
+    // Hash of the text being synthesized into currentDir, stored in its complete marker
+    private String currentTextKey;
+    private final List<Utterance> utterances = new ArrayList<>();
+    private int nextToPlay;
+    private MediaPlayer mediaPlayer;
+
+    // Streaming answer being read, see startStream
+    private boolean streamOpen;
+    private long streamMessageId;
+    private String streamLanguage;
+    private int streamOffset;
+
+    public SpeechPlayer(Context context, TextToSpeech textToSpeech) {
+        this.textToSpeech = textToSpeech;
+        this.cacheRoot = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR);
+        textToSpeech.setOnUtteranceProgressListener(new UtteranceProgressListener() {
+            @Override
+            public void onStart(String utteranceId) {
+            }
+
+            @Override
+            public void onDone(String utteranceId) {
+                onSynthesized(utteranceId, true);
+            }
+
+            @Override
+            public void onError(String utteranceId) {
+                onSynthesized(utteranceId, false);
+            }
+        });
+    }
+
+    // Called once the TextToSpeech engine has initialized
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Voice for the given language code, English if the device has none for it
+    public void selectLanguage(String language) {
+        if (!ready) {
+            return;
+        }
+        int result = textToSpeech.setLanguage(LanguageDetector.getSpeechLocale(language));
+        if (result == TextToSpeech.LANG_MISSING_DATA || result == TextToSpeech.LANG_NOT_SUPPORTED) {
+            textToSpeech.setLanguage(Locale.US);
+        }
+    }
+
+    public void speak(Message message) {
+        final String text = message.getText();
+        if (!ready || text == null || text.trim().isEmpty()) {
+            return;
+        }
+        stop();
+        final int run = generation;
+        final String textKey = textKey(text);
+        final String language = message.getLanguage() != null
+                ? message.getLanguage() : LanguageDetector.detectLanguage(text);
+        final File dir = new File(cacheRoot, message.getId() + "_"
+                + LanguageDetector.getSpeechLocale(language).toLanguageTag());
+
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // A message's text can change after it was spoken ("Loading..." becoming the
+                // answer), audio of other text counts as a miss
+                final int cachedCount = readCompleteMarker(dir, textKey);
+                if (cachedCount > 0) {
+                    // LRU clock
+                    dir.setLastModified(System.currentTimeMillis());
+                } else {
+                    deleteDirectory(dir);
+                    dir.mkdirs();
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (run != generation) {
+                            return;
+                        }
+                        currentDir = dir;
+                        currentTextKey = textKey;
+                        if (cachedCount > 0) {
+                            playCached(dir, cachedCount);
+                        } else {
+                            enqueue(text, language);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Starts reading an answer that is still arriving. Pass the whole text received so far
+     * to appendStream after every delta and the final text to finishStream.
+     */
+    public void startStream(Message message) {
+        if (!ready) {
+            return;
+        }
+        stop();
+        streamOpen = true;
+        streamMessageId = message.getId();
+        // Without a language each chunk is detected on its own; the directory is named like
+        // speak() would name it
+        streamLanguage = message.getLanguage();
+        streamOffset = 0;
+        String language = streamLanguage != null
+                ? streamLanguage : LanguageDetector.detectLanguage(message.getText());
+        currentDir = new File(cacheRoot, message.getId() + "_"
+                + LanguageDetector.getSpeechLocale(language).toLanguageTag());
+        // A new answer has no stale files to clear, creating the directory is all the setup needed
+        currentDir.mkdirs();
+    }
+
+    public boolean isStreaming(Message message) {
+        return streamOpen && streamMessageId == message.getId();
+    }
+
+    // Queues every sentence of text that has been completed since the last call
+    public void appendStream(CharSequence text) {
+        if (!streamOpen) {
+            return;
+        }
+        int end;
+        while ((end = SentenceSplitter.findBoundary(text, streamOffset)) != -1) {
+            enqueueStreamed(text, end);
+        }
+        if (utterances.isEmpty() && text.length() - streamOffset >= FIRST_CHUNK_CHARS
+                && (end = SentenceSplitter.findClauseBreak(text, streamOffset)) != -1) {
+            enqueueStreamed(text, end);
+        }
+    }
+
+    // Queues whatever is left after the last sentence end; the answer is cached once spoken
+    public void finishStream(CharSequence text) {
+        if (!streamOpen) {
+            return;
+        }
+        appendStream(text);
+        if (streamOffset < text.length()) {
+            enqueueStreamed(text, text.length());
+        }
+        streamOpen = false;
+        currentTextKey = textKey(text);
+        if (allSynthesized()) {
+            markComplete(currentDir, utterances.size(), currentTextKey);
+        }
+    }
+
+    private void enqueueStreamed(CharSequence text, int end) {
+        String chunk = text.subSequence(streamOffset, end).toString();
+        streamOffset = end;
+        enqueue(chunk, streamLanguage != null ? streamLanguage : LanguageDetector.detectLanguage(chunk));
+    }
+
+    public void stop() {
+        generation++;
+        streamOpen = false;
+        utterances.clear();
+        nextToPlay = 0;
+        currentDir = null;
+        currentTextKey = null;
+        if (ready) {
+            textToSpeech.stop();
+        }
+        releasePlayer();
+    }
+
+    public void shutdown() {
+        stop();
+        textToSpeech.shutdown();
+        diskExecutor.shutdown();
+    }
+
+    private void playCached(File dir, int count) {
+        for (int i = 0; i < count; i++) {
+            Utterance utterance = new Utterance(new File(dir, i + ".wav"));
+            utterance.ready = true;
+            utterances.add(utterance);
+        }
+        playNext();
+    }
+
+    private void enqueue(String text, String language) {
+        for (String sentence : SentenceSplitter.split(text, TextToSpeech.getMaxSpeechInputLength())) {
+            // Script runs get their own voice, e.g. English terms inside a Sindhi answer
+            for (TextSegment segment : LanguageDetector.segment(sentence, language)) {
+                if (segment.getText().trim().isEmpty()) {
+                    continue;
+                }
+                int index = utterances.size();
+                Utterance utterance = new Utterance(new File(currentDir, index + ".wav"));
+                utterances.add(utterance);
+                selectLanguage(segment.getLanguage());
+                // Queued in order; the locale is captured when each one is queued
+                textToSpeech.synthesizeToFile(segment.getText(), null, utterance.file, generation + ":" + index);
+            }
+        }
+    }
+
+    private void onSynthesized(final String utteranceId, final boolean success) {
+        // Progress callbacks arrive on a binder thread
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                int separator = utteranceId.indexOf(':');
+                if (separator == -1) {
+                    return;
+                }
+                int run = Integer.parseInt(utteranceId.substring(0, separator));
+                int index = Integer.parseInt(utteranceId.substring(separator + 1));
+                if (run != generation || index >= utterances.size()) {
+                    return;
+                }
+                Utterance utterance = utterances.get(index);
+                utterance.ready = true;
+                utterance.failed = !success;
+                if (!streamOpen && allSynthesized()) {
+                    markComplete(currentDir, utterances.size(), currentTextKey);
+                }
+                playNext();
+            }
+        });
+    }
+
+    private void playNext() {
+        if (mediaPlayer != null) {
+            // Continues from onCompletion
+            return;
+        }
+        while (nextToPlay < utterances.size()) {
+            Utterance utterance = utterances.get(nextToPlay);
+            if (!utterance.ready) {
+                // Resumes when its synthesis is done
+                return;
+            }
+            if (!utterance.failed && start(utterance.file)) {
+                return;
+            }
+            nextToPlay++;
+        }
+    }
+
+    private boolean start(File file) {
+        final int run = generation;
+        MediaPlayer player = new MediaPlayer();
+        try {
+            player.setDataSource(file.getPath());
+            player.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+                @Override
+                public void onCompletion(MediaPlayer mp) {
+                    if (run != generation) {
+                        return;
+                    }
+                    releasePlayer();
+                    nextToPlay++;
+                    playNext();
+                }
+            });
+            player.prepare();
+            player.start();
+            mediaPlayer = player;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            player.release();
+            return false;
+        }
+    }
+
+    private void releasePlayer() {
+        if (mediaPlayer != null) {
+            mediaPlayer.release();
+            mediaPlayer = null;
+        }
+    }
+
+    private boolean allSynthesized() {
+        if (utterances.isEmpty()) {
+            return false;
+        }
+        for (Utterance utterance : utterances) {
+            if (!utterance.ready || utterance.failed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void markComplete(final File dir, final int count, final String textKey) {
+        if (dir == null || textKey == null) {
+            return;
+        }
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try (OutputStream out = new FileOutputStream(new File(dir, COMPLETE_MARKER))) {
+                    out.write((count + " " + textKey).getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                trimCache(dir);
+            }
+        });
+    }
+
+    // Number of cached pieces, or 0 if the directory doesn't hold a complete synthesis of the text
+    private static int readCompleteMarker(File dir, String textKey) {
+        File marker = new File(dir, COMPLETE_MARKER);
+        if (!marker.exists()) {
+            return 0;
+        }
+        try (InputStream in = new FileInputStream(marker)) {
+            byte[] bytes = new byte[32];
+            int read = in.read(bytes);
+            if (read <= 0) {
+                return 0;
+            }
+            // "<count> <text hash>"; markers from before the hash was added don't match
+            String[] fields = new String(bytes, 0, read, StandardCharsets.UTF_8).trim().split(" ");
+            if (fields.length != 2 || !fields[1].equals(textKey)) {
+                return 0;
+            }
+            int count = Integer.parseInt(fields[0]);
+            for (int i = 0; i < count; i++) {
+                if (!new File(dir, i + ".wav").exists()) {
+                    return 0;
+                }
+            }
+            return count;
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String textKey(CharSequence text) {
+        return Integer.toHexString(text.toString().hashCode());
+    }
+
+    // Drop least recently played answers until the cache fits its budget
+    private void trimCache(File keep) {
+        File[] dirs = cacheRoot.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        long total = 0;
+        final long[] sizes = new long[dirs.length];
+        for (int i = 0; i < dirs.length; i++) {
+            sizes[i] = directorySize(dirs[i]);
+            total += sizes[i];
+        }
+        if (total <= MAX_CACHE_BYTES) {
+            return;
+        }
+        Integer[] order = new Integer[dirs.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final File[] byIndex = dirs;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(byIndex[a].lastModified(), byIndex[b].lastModified());
+            }
+        });
+        for (int i : order) {
+            if (total <= MAX_CACHE_BYTES) {
+                break;
+            }
+            if (dirs[i].equals(keep)) {
+                continue;
+            }
+            deleteDirectory(dirs[i]);
+            total -= sizes[i];
+        }
+    }
+
+    private static long directorySize(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return dir.length();
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static class Utterance {
+        final File file;
+        boolean ready;
+        boolean failed;
+
+        Utterance(File file) {
+            this.file = file;
+        }
+    }
+}
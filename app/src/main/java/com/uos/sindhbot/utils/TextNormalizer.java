@@ -0,0 +1,142 @@
+package com.uos.sindhbot.utils;
+
+import java.text.Normalizer;
+
+/**
+ * Canonical form of user text for cache keys, FAQ lookup and history search. The same
+ * Urdu/Sindhi question can be typed with Arabic or Farsi yeh, Arabic kaf or keheh, with or
+ * without harakat, tatweel and zero-width joiners, and with Latin or Arabic-Indic digits;
+ * all of these fold to one spelling. NFKC runs first (only when the text isn't already in
+ * that form) to undo presentation forms and compatibility characters, then a single pass
+ * over the result applies the folding table, lowercases Latin letters and collapses
+ * whitespace. Buffers are per thread and reused.
+ */
+public class TextNormalizer {
+    private static final int ARABIC_BASE = 0x0600;
+    private static final char REMOVE = (char) 0xFFFF;
+
+    // Replacement for each char of the Arabic block, REMOVE to drop it, 0 to keep it as is
+    private static final char[] ARABIC_FOLDING = new char[0x100];
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    static {
+        // Harakat, superscript alef and Quranic annotation marks
+        removeRange(0x064B, 0x065F);
+        ARABIC_FOLDING[0x0670 - ARABIC_BASE] = REMOVE;
+        removeRange(0x06D6, 0x06ED);
+        // Tatweel
+        ARABIC_FOLDING[0x0640 - ARABIC_BASE] = REMOVE;
+
+        // Farsi yeh and alef maksura -> Arabic yeh (the Sindhi spelling)
+        fold('ی', 'ي');
+        fold('ى', 'ي');
+        // Arabic kaf -> keheh; Sindhi's swash kaf ڪ is a different letter and stays
+        fold('ك', 'ک');
+        // Heh goal, heh with yeh and teh marbuta forms -> heh
+        fold('ہ', 'ه');
+        fold('ۀ', 'ه');
+        fold('ۂ', 'ه');
+        fold('ۃ', 'ه');
+        fold('ة', 'ه');
+        // Alef with hamza/madda/wasla -> bare alef
+        fold('آ', 'ا');
+        fold('أ', 'ا');
+        fold('إ', 'ا');
+        fold('ٱ', 'ا');
+        // Letters with hamza above lose it, the same as when the hamza was typed as a separate mark
+        fold('ؤ', 'و');
+        fold('ئ', 'ي');
+        fold('ۓ', 'ے');
+
+        // Arabic-Indic and Extended Arabic-Indic (Urdu/Sindhi) digits -> ASCII
+        for (int i = 0; i < 10; i++) {
+            ARABIC_FOLDING[0x0660 + i - ARABIC_BASE] = (char) ('0' + i);
+            ARABIC_FOLDING[0x06F0 + i - ARABIC_BASE] = (char) ('0' + i);
+        }
+
+        // Script punctuation -> ASCII, so "?" and "؟" end a question the same way
+        fold('؟', '?');
+        fold('،', ',');
+        fold('؛', ';');
+        fold('۔', '.');
+        fold('٪', '%');
+    }
+
+    public static String normalize(CharSequence text) {
+        if (text == null) {
+            return "";
+        }
+        CharSequence source = text;
+        if (needsCompatibilityNormalization(text)) {
+            source = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        }
+
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        boolean pendingSpace = false;
+        for (int i = 0, length = source.length(); i < length; i++) {
+            char c = source.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            } else if (c >= ARABIC_BASE && c < ARABIC_BASE + 0x100) {
+                char folded = ARABIC_FOLDING[c - ARABIC_BASE];
+                if (folded == REMOVE) {
+                    continue;
+                }
+                if (folded != 0) {
+                    c = folded;
+                }
+            } else if (isInvisible(c)) {
+                continue;
+            } else if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                pendingSpace = out.length() > 0;
+                continue;
+            } else if (c > 0x7F) {
+                c = Character.toLowerCase(c);
+            }
+
+            if (pendingSpace) {
+                out.append(' ');
+                pendingSpace = false;
+            }
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    // ASCII, the Arabic block and whitespace are NFKC-stable; anything else gets the full treatment
+    private static boolean needsCompatibilityNormalization(CharSequence text) {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80 && (c < ARABIC_BASE || c >= ARABIC_BASE + 0x100)) {
+                return !Normalizer.isNormalized(text, Normalizer.Form.NFKC);
+            }
+        }
+        return false;
+    }
+
+    // Zero-width joiners/non-joiners, bidi controls, BOM and soft hyphen
+    private static boolean isInvisible(char c) {
+        return (c >= 0x200B && c <= 0x200F)
+                || (c >= 0x202A && c <= 0x202E)
+                || (c >= 0x2066 && c <= 0x2069)
+                || c == 0xFEFF
+                || c == 0x00AD;
+    }
+
+    private static void fold(char from, char to) {
+        ARABIC_FOLDING[from - ARABIC_BASE] = to;
+    }
+
+    private static void removeRange(int from, int to) {
+        for (int c = from; c <= to; c++) {
+            ARABIC_FOLDING[c - ARABIC_BASE] = REMOVE;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.uos.sindhbot.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.uos.sindhbot.models.Message;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reflective Gson against the streaming adapters of GsonProvider, on a full 50-session
+ * history (the legacy prefs format ChatHistoryManager migrates). Run with ./gradlew :app:jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsonProviderBenchmark {
+    static final int SESSIONS = ChatHistoryDatabase.MAX_SESSIONS;
+    static final int MESSAGES_PER_SESSION = 20;
+
+    private static final Type HISTORY_TYPE = new TypeToken<List<ChatHistoryManager.ChatSession>>(){}.getType();
+
+    private final Gson reflective = new Gson();
+    private final Gson streaming = GsonProvider.get();
+
+    private List<ChatHistoryManager.ChatSession> history;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        history = createHistory();
+        json = reflective.toJson(history, HISTORY_TYPE);
+    }
+
+    @Benchmark
+    public String serializeReflective() {
+        return reflective.toJson(history, HISTORY_TYPE);
+    }
+
+    @Benchmark
+    public String serializeStreaming() {
+        return streaming.toJson(history, HISTORY_TYPE);
+    }
+
+    @Benchmark
+    public List<ChatHistoryManager.ChatSession> deserializeReflective() {
+        return reflective.fromJson(json, HISTORY_TYPE);
+    }
+
+    @Benchmark
+    public List<ChatHistoryManager.ChatSession> deserializeStreaming() {
+        return streaming.fromJson(json, HISTORY_TYPE);
+    }
+
+    // Alternating questions and answers in the app's languages, answers a few sentences long
+    static List<ChatHistoryManager.ChatSession> createHistory() {
+        String[] questions = {
+                "What are the admission requirements?",
+                "داخلا جي merit list ڪڏهن ايندي؟",
+                "فیس کتنی ہے؟",
+                "fee kitni hai",
+        };
+        String[] answers = {
+                "Minimum 45% marks in intermediate are required. The entry test is held in August "
+                        + "and the merit list is published on www.usindh.edu.pk two weeks later.",
+                "داخلا جي merit list ٽيسٽ کان ٻه هفتا پوءِ www.usindh.edu.pk تي لڳندي آهي. "
+                        + "وڌيڪ معلومات لاءِ admission office سان رابطو ڪريو.",
+                "سالانہ فیس پروگرام کے لحاظ سے مختلف ہے۔ تفصیل یونیورسٹی کی ویب سائٹ پر موجود ہے۔",
+                "Fee program ke hisaab se mukhtalif hai, tafseel university ki website par hai.",
+        };
+        String[] languages = {"en", "sd", "ur", "ur-Latn"};
+
+        List<ChatHistoryManager.ChatSession> sessions = new ArrayList<>();
+        for (int s = 0; s < SESSIONS; s++) {
+            ChatHistoryManager.ChatSession session = new ChatHistoryManager.ChatSession();
+            session.id = "session-" + s;
+            session.messages = new ArrayList<>();
+            for (int m = 0; m < MESSAGES_PER_SESSION; m++) {
+                int topic = (s + m / 2) % questions.length;
+                boolean isUser = m % 2 == 0;
+                session.messages.add(new Message(isUser ? questions[topic] : answers[topic], isUser,
+                        String.format("%02d:%02d PM", 1 + s % 12, m), languages[topic]));
+            }
+            session.firstPrompt = session.messages.get(0).getText();
+            session.title = session.firstPrompt;
+            session.timestamp = 1700000000000L + s * 60000L;
+            session.messageCount = MESSAGES_PER_SESSION;
+            sessions.add(session);
+        }
+        return sessions;
+    }
+}
@@ -0,0 +1,71 @@
+package com.uos.sindhbot.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.uos.sindhbot.models.ApiResponse;
+import com.uos.sindhbot.models.AuthResponse;
+import com.uos.sindhbot.models.Message;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// The streaming adapters have to read and write exactly what reflection did, or stored data stops loading
+public class GsonProviderTest {
+    private static final Type HISTORY_TYPE = new TypeToken<List<ChatHistoryManager.ChatSession>>(){}.getType();
+
+    private final Gson reflective = new Gson();
+    private final Gson streaming = GsonProvider.get();
+
+    @Test
+    public void historyMatchesReflection() {
+        List<ChatHistoryManager.ChatSession> history = GsonProviderBenchmark.createHistory();
+        history.get(0).title = null;
+        history.get(1).messages.get(1).setLanguage(null);
+
+        String json = reflective.toJson(history, HISTORY_TYPE);
+        assertEquals(json, streaming.toJson(history, HISTORY_TYPE));
+
+        List<ChatHistoryManager.ChatSession> read = streaming.fromJson(json, HISTORY_TYPE);
+        assertEquals(json, reflective.toJson(read, HISTORY_TYPE));
+    }
+
+    @Test
+    public void messageWithoutIdGetsOne() {
+        Message message = streaming.fromJson(
+                "{\"text\":\"hi\",\"isUser\":true,\"timestamp\":null,\"extra\":[1,{\"a\":2}]}", Message.class);
+        assertEquals("hi", message.getText());
+        assertTrue(message.isUser());
+        assertNull(message.getTimestamp());
+        assertNotEquals(0, message.getId());
+    }
+
+    @Test
+    public void apiResponseMatchesReflection() {
+        String json = "{\"answer\":\"A\",\"source\":\"www.usindh.edu.pk\",\"language\":\"sd\","
+                + "\"success\":false,\"error\":\"timeout\",\"retryable\":true,\"unknown\":null}";
+        ApiResponse response = streaming.fromJson(json, ApiResponse.class);
+        assertEquals("A", response.getAnswer());
+        assertFalse(response.isSuccess());
+        assertTrue(response.isRetryable());
+        assertEquals(reflective.toJson(reflective.fromJson(json, ApiResponse.class)), streaming.toJson(response));
+        assertNull(streaming.fromJson("null", ApiResponse.class));
+    }
+
+    @Test
+    public void authResponseMatchesReflection() {
+        String json = "{\"success\":true,\"message\":\"ok\",\"token\":\"t\","
+                + "\"user\":{\"user_id\":\"7\",\"full_name\":\"Name\",\"email\":null}}";
+        AuthResponse response = streaming.fromJson(json, AuthResponse.class);
+        assertEquals("Name", response.getUser().getFull_name());
+        assertNull(response.getUser().getEmail());
+        assertEquals(reflective.toJson(reflective.fromJson(json, AuthResponse.class)), streaming.toJson(response));
+    }
+}
@@ -0,0 +1,101 @@
+package com.uos.sindhbot.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * LanguageDetector.detectLanguage against the regex + indexOf detection it replaced (copied
+ * below as it was), on an answer-sized text per language. Run with
+ * ./gradlew :app:jmh -Pjmh=LanguageDetectorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LanguageDetectorBenchmark {
+    static final String ENGLISH = "Minimum 45% marks in intermediate are required. The entry test is held "
+            + "in August and the merit list is published on www.usindh.edu.pk two weeks later.";
+    static final String URDU = "سالانہ فیس پروگرام کے لحاظ سے مختلف ہے۔ داخلہ ٹیسٹ اگست میں ہوتا ہے اور "
+            + "میرٹ لسٹ دو ہفتے بعد یونیورسٹی کی ویب سائٹ پر لگتی ہے۔";
+    static final String SINDHI = "داخلا لاءِ انٽرميڊيٽ ۾ گهٽ ۾ گهٽ 45 سيڪڙو مارڪون گهرجن. داخلا ٽيسٽ آگسٽ ۾ "
+            + "ٿيندي آهي ۽ ميرٽ لسٽ ٻن هفتن کان پوءِ يونيورسٽي جي ويب سائيٽ تي لڳندي آهي.";
+    static final String MIXED = "داخلا جي merit list ٽيسٽ کان ٻه هفتا پوءِ www.usindh.edu.pk تي لڳندي آهي. "
+            + "وڌيڪ معلومات لاءِ admission office سان رابطو ڪريو.";
+
+    @Param({"en", "ur", "sd", "mixed"})
+    public String language;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = sample(language);
+        // Load the n-gram model outside the measurement
+        LanguageDetector.detectLanguage(ENGLISH);
+    }
+
+    @Benchmark
+    public String detect() {
+        return LanguageDetector.detectLanguage(text);
+    }
+
+    @Benchmark
+    public String detectRegex() {
+        return RegexLanguageDetector.detectLanguage(text);
+    }
+
+    static String sample(String language) {
+        switch (language) {
+            case "ur":
+                return URDU;
+            case "sd":
+                return SINDHI;
+            case "mixed":
+                return MIXED;
+            default:
+                return ENGLISH;
+        }
+    }
+
+    // LanguageDetector.detectLanguage before the single-pass rewrite, kept as the baseline
+    static class RegexLanguageDetector {
+        private static final Pattern URDU_PATTERN = Pattern.compile(".*[\\u0600-\\u06FF\\u0750-\\u077F\\u08A0-\\u08FF\\uFB50-\\uFDFF\\uFE70-\\uFEFF].*");
+
+        static String detectLanguage(String text) {
+            if (text == null || text.trim().isEmpty()) {
+                return "en";
+            }
+            if (URDU_PATTERN.matcher(text).matches()) {
+                if (containsSindhiSpecificChars(text)) {
+                    return "sd";
+                }
+                return "ur";
+            }
+            return "en";
+        }
+
+        private static boolean containsSindhiSpecificChars(String text) {
+            String sindhiChars = "ڄڃڇڊڋڌڍڎڏڐڑڒړڔڕږڗڙښڛڜڝڞڟڠڡڢڣڤڥڦڧڨکڪګڬڭڮگڰڱڲڳڴڵڶڷڸڹںڻڼڽھڿہۂۃۄۅۆۇۈۉۊۋیۍێۏېۑےۓ";
+            for (char c : text.toCharArray()) {
+                if (sindhiChars.indexOf(c) != -1) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
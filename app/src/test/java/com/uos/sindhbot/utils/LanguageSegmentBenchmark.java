@@ -0,0 +1,53 @@
+package com.uos.sindhbot.utils;
+
+import com.uos.sindhbot.models.TextSegment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LanguageDetector.segment on code-switched answers, Sindhi or Urdu with English terms,
+ * links and numbers in between, the text SpeechPlayer splits per voice. Run with
+ * ./gradlew :app:jmh -Pjmh=LanguageSegmentBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LanguageSegmentBenchmark {
+    private static final String SINDHI = "داخلا لاءِ Intermediate ۾ گهٽ ۾ گهٽ 45% marks گهرجن. Entry test آگسٽ ۾ "
+            + "ٿيندي آهي ۽ merit list ٻن هفتن کان پوءِ www.usindh.edu.pk تي لڳندي آهي. وڌيڪ معلومات "
+            + "لاءِ admission office (Allama I.I. Kazi Campus) سان رابطو ڪريو.";
+    private static final String URDU = "داخلے کے لیے Intermediate میں کم از کم 45% marks ضروری ہیں۔ Entry test اگست میں "
+            + "ہوتا ہے اور merit list دو ہفتے بعد www.usindh.edu.pk پر لگتی ہے۔ مزید معلومات کے لیے "
+            + "admission office (Allama I.I. Kazi Campus) سے رابطہ کریں۔";
+
+    @Param({"sd", "ur"})
+    public String language;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = "sd".equals(language) ? SINDHI : URDU;
+    }
+
+    @Benchmark
+    public List<TextSegment> segment() {
+        return LanguageDetector.segment(text, language);
+    }
+}
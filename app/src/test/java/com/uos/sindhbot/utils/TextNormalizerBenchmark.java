@@ -0,0 +1,70 @@
+package com.uos.sindhbot.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TextNormalizer.normalize on typed questions in each language. The plain inputs stay in
+ * ASCII and the Arabic block, so the NFKC pass is skipped; the nfkc ones add presentation
+ * forms or fullwidth letters, which send the text through Normalizer first. Run with
+ * ./gradlew :app:jmh -Pjmh=TextNormalizerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextNormalizerBenchmark {
+    @Param({"en", "ur", "sd", "mixed"})
+    public String language;
+
+    @Param({"false", "true"})
+    public boolean nfkc;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        switch (language) {
+            case "ur":
+                // Farsi yeh, heh goal, harakat and Urdu digits to fold; lam-alef ligature U+FEFB
+                text = nfkc
+                        ? "داخلے کا ﻻزمی ٹیسٹ کب ہوگا؟ فیس کتنی ہے، اور ۲۰۲۴ میں میرٹ کیا تھی؟"
+                        : "داخلے کا لازمی ٹیسٹ کب ہوگا؟ فیس کتنی ہے، اور ۲۰۲۴ میں مَیرٹ کیا تھی؟";
+                break;
+            case "sd":
+                // Tatweel and Sindhi digits to fold; isolated keheh form U+FB8E
+                text = nfkc
+                        ? "داخلا جي ميرٽ لسٽ ڪڏهن ايندي؟ ﮎمپيوٽر سائنس جي في ڪيتري آهي ۽ ۲۰۲۴ ۾ ڇا هئي؟"
+                        : "داخلا جي ميرٽ لسـٽ ڪڏهن ايندي؟ ڪمپيوٽر سائنس جي في ڪيتري آهي ۽ ۲۰۲۴ ۾ ڇا هئي؟";
+                break;
+            case "mixed":
+                text = nfkc
+                        ? "داخلا جي Ｍerit List ڪڏهن ايندي؟ ＢＳ Computer Science جي fee ڪيتري آهي؟"
+                        : "داخلا جي Merit List ڪڏهن ايندي؟ BS Computer Science جي fee ڪيتري آهي؟";
+                break;
+            default:
+                text = nfkc
+                        ? "When is the Ｍerit List for ＢＳ Computer Science announced, and what is the fee?"
+                        : "When is the Merit List for BS  Computer Science announced, and what is the fee?";
+                break;
+        }
+    }
+
+    @Benchmark
+    public String normalize() {
+        return TextNormalizer.normalize(text);
+    }
+}
@@ -1,15 +1,17 @@
 from fastapi import FastAPI, HTTPException, Depends, status
 from fastapi.middleware.cors import CORSMiddleware
+from fastapi.responses import StreamingResponse
 import uvicorn
 from fastapi.security import HTTPBearer, HTTPAuthorizationCredentials
 from pydantic import BaseModel, EmailStr
 from openai import OpenAI
 import os
-from typing import Optional
+from typing import Optional, Iterator, List
 import json
 import hashlib
 import secrets
 from datetime import datetime, timedelta
+from concurrent.futures import ThreadPoolExecutor
 import jwt
 from dotenv import load_dotenv
 from pathlib import Path
@@ -251,6 +253,31 @@ IMPORTANT NOTES:
 - Scholarships and financial aid may be available for deserving students
 """ + formatted_university_data + formatted_faqs
 
+# System prompt that provides helpful answers about UoS
+UOS_SYSTEM_PROMPT = f"""You are a helpful and knowledgeable assistant for University of Sindh (UoS). Your role is to provide accurate, helpful information about the University of Sindh including admissions, fees, programs, facilities, and general university information.
+
+KNOWLEDGE BASE ABOUT UNIVERSITY OF SINDH:
+{UOS_KNOWLEDGE_BASE}
+
+CRITICAL INSTRUCTIONS:
+1. The FAQ section above contains OFFICIAL answers. If a user's question matches any FAQ question, you MUST use that exact answer
+2. Answer questions about University of Sindh using the knowledge base provided above
+3. Be helpful, friendly, and provide detailed answers when possible
+4. If the question is about UoS but specific information is not in the knowledge base, provide a general helpful answer based on common university practices, but mention that for specific details, they should contact the university
+5. If the question is completely unrelated to University of Sindh, politely redirect to UoS-related topics
+6. Always be accurate and honest - if you don't know something specific, say so
+7. Include relevant contact information (email, website, phone) when helpful
+8. Format your answers clearly with proper structure
+9. For fee-related questions, mention that fees may vary and are subject to change
+10. For admission questions, mention that requirements may vary by program
+
+IMPORTANT: 
+- Check the FAQ section first before generating any answer
+- Provide actual helpful answers, not just "visit the website"
+- Use the knowledge base to give specific information
+- Be conversational and helpful
+- Only suggest visiting the website if the question requires very specific or up-to-date information not in the knowledge base"""
+
 # Authentication Models
 class LoginRequest(BaseModel):
     email: EmailStr
@@ -276,9 +303,15 @@ class AuthResponse(BaseModel):
     user: Optional[dict] = None
 
 # Chat Models
+class TextSegment(BaseModel):
+    text: str
+    language: str = "en"
+
 class QuestionRequest(BaseModel):
     question: str
     language: str = "en"
+    # Script/language runs of the question as split by the app, in order
+    segments: Optional[List[TextSegment]] = None
 
 class QuestionResponse(BaseModel):
     answer: str
@@ -286,6 +319,18 @@ class QuestionResponse(BaseModel):
     language: str = "en"
     success: bool = True
     error: Optional[str] = None
+    # Set on failures worth asking again (OpenAI or network errors), not on configuration errors
+    retryable: bool = False
+
+# Largest batch accepted by /api/ask/batch, the app never sends more
+MAX_BATCH_SIZE = 10
+
+class BatchQuestionRequest(BaseModel):
+    questions: List[QuestionRequest]
+
+class BatchQuestionResponse(BaseModel):
+    # One answer per question, in request order
+    answers: List[QuestionResponse]
 
 # Helper Functions
 def hash_password(password: str) -> str:
@@ -316,7 +361,16 @@ def verify_token(token: str) -> Optional[dict]:
     except jwt.InvalidTokenError:
         return None
 
-def translate_text(text: str, target_lang: str) -> str:
+# Codes the app sends that the model understands better spelled out
+LANGUAGE_NAMES = {
+    "ur-Latn": "Roman Urdu (Urdu written in the Latin alphabet)",
+    "sd-Latn": "Roman Sindhi (Sindhi written in the Latin alphabet)",
+}
+
+def language_name(code: str) -> str:
+    return LANGUAGE_NAMES.get(code, code)
+
+def translate_text(text: str, target_lang: str, keep_terms: Optional[List[str]] = None) -> str:
     """Translate text using OpenAI"""
     if target_lang == "en":
         return text
@@ -324,11 +378,15 @@ def translate_text(text: str, target_lang: str) -> str:
     if not client:
         return text # Fallback if no client
 
+    instruction = f"Translate the following text to {language_name(target_lang)}. Return only the translation, no explanations."
+    if keep_terms:
+        instruction += " Keep these terms exactly as written: " + "; ".join(keep_terms)
+
     try:
         response = client.chat.completions.create(
             model="gpt-3.5-turbo",
             messages=[
-                {"role": "system", "content": f"Translate the following text to {target_lang}. Return only the translation, no explanations."},
+                {"role": "system", "content": instruction},
                 {"role": "user", "content": text}
             ],
             max_tokens=500,
@@ -339,6 +397,20 @@ def translate_text(text: str, target_lang: str) -> str:
         print(f"Translation error: {e}")
         return text
 
+def question_to_english(question: str, user_language: str, segments: Optional[List[TextSegment]] = None) -> str:
+    """Translate the question to English, leaving the English spans the app marked alone"""
+    if user_language == "en":
+        return question
+    if not segments:
+        return translate_text(question, "en")
+    
+    foreign = [s for s in segments if s.language != "en" and any(c.isalpha() for c in s.text)]
+    if not foreign:
+        # Only English spans carry letters, nothing to translate
+        return question
+    english_terms = [s.text.strip() for s in segments if s.language == "en" and s.text.strip()]
+    return translate_text(question, "en", keep_terms=english_terms)
+
 def find_matching_faq(question: str) -> Optional[dict]:
     """Find matching FAQ using simple similarity check"""
     question_lower = question.lower().strip()
@@ -375,7 +447,7 @@ def find_matching_faq(question: str) -> Optional[dict]:
     
     return None
 
-def get_uos_answer(question: str, user_language: str) -> dict:
+def get_uos_answer(question: str, user_language: str, segments: Optional[List[TextSegment]] = None) -> dict:
     """Get answer from OpenAI with UoS context restriction"""
     
     if not client:
@@ -402,36 +474,11 @@ def get_uos_answer(question: str, user_language: str) -> dict:
             "success": True
         }
 
-    # System prompt that provides helpful answers about UoS
-    system_prompt = f"""You are a helpful and knowledgeable assistant for University of Sindh (UoS). Your role is to provide accurate, helpful information about the University of Sindh including admissions, fees, programs, facilities, and general university information.
-
-KNOWLEDGE BASE ABOUT UNIVERSITY OF SINDH:
-{UOS_KNOWLEDGE_BASE}
-
-CRITICAL INSTRUCTIONS:
-1. The FAQ section above contains OFFICIAL answers. If a user's question matches any FAQ question, you MUST use that exact answer
-2. Answer questions about University of Sindh using the knowledge base provided above
-3. Be helpful, friendly, and provide detailed answers when possible
-4. If the question is about UoS but specific information is not in the knowledge base, provide a general helpful answer based on common university practices, but mention that for specific details, they should contact the university
-5. If the question is completely unrelated to University of Sindh, politely redirect to UoS-related topics
-6. Always be accurate and honest - if you don't know something specific, say so
-7. Include relevant contact information (email, website, phone) when helpful
-8. Format your answers clearly with proper structure
-9. For fee-related questions, mention that fees may vary and are subject to change
-10. For admission questions, mention that requirements may vary by program
-
-IMPORTANT: 
-- Check the FAQ section first before generating any answer
-- Provide actual helpful answers, not just "visit the website"
-- Use the knowledge base to give specific information
-- Be conversational and helpful
-- Only suggest visiting the website if the question requires very specific or up-to-date information not in the knowledge base"""
+    system_prompt = UOS_SYSTEM_PROMPT
     
     try:
         # Translate question to English if needed
-        question_english = question
-        if user_language != "en":
-            question_english = translate_text(question, "en")
+        question_english = question_to_english(question, user_language, segments)
         
         # Get answer from OpenAI
         response = client.chat.completions.create(
@@ -468,9 +515,83 @@ IMPORTANT:
             "source": None,
             "language": user_language,
             "success": False,
-            "error": str(e)
+            "error": str(e),
+            "retryable": True
         }
 
+def sse_event(payload: dict) -> str:
+    """Encode one Server-Sent Event frame"""
+    return f"data: {json.dumps(payload, ensure_ascii=False)}\n\n"
+
+def stream_completion(messages: list, max_tokens: int, temperature: float) -> Iterator[str]:
+    """Yield content deltas from a streamed OpenAI chat completion"""
+    stream = client.chat.completions.create(
+        model="gpt-3.5-turbo",
+        messages=messages,
+        max_tokens=max_tokens,
+        temperature=temperature,
+        stream=True
+    )
+    for chunk in stream:
+        if not chunk.choices:
+            continue
+        delta = chunk.choices[0].delta.content
+        if delta:
+            yield delta
+
+def stream_uos_answer(question: str, user_language: str, segments: Optional[List[TextSegment]] = None) -> Iterator[str]:
+    """Same answer pipeline as get_uos_answer, emitted as SSE deltas followed by a final done event"""
+    
+    if not client:
+        yield sse_event({"done": True, "success": False, "language": user_language, "error": "Missing API Key"})
+        return
+
+    matching_faq = find_matching_faq(question)
+    if matching_faq:
+        answer = matching_faq.get('answer')
+        if user_language != "en":
+            answer = translate_text(answer, user_language)
+        yield sse_event({"delta": answer})
+        yield sse_event({"done": True, "success": True, "source": None, "language": user_language})
+        return
+
+    try:
+        question_english = question_to_english(question, user_language, segments)
+        
+        chat_messages = [
+            {"role": "system", "content": UOS_SYSTEM_PROMPT},
+            {"role": "user", "content": question_english}
+        ]
+        
+        if user_language == "en":
+            deltas = stream_completion(chat_messages, max_tokens=800, temperature=0.7)
+        else:
+            # The answer has to be complete before it can be translated, so only the
+            # translation pass is streamed for Urdu/Sindhi
+            response = client.chat.completions.create(
+                model="gpt-3.5-turbo",
+                messages=chat_messages,
+                max_tokens=800,
+                temperature=0.7
+            )
+            answer_english = response.choices[0].message.content.strip()
+            deltas = stream_completion([
+                {"role": "system", "content": f"Translate the following text to {language_name(user_language)}. Return only the translation, no explanations."},
+                {"role": "user", "content": answer_english}
+            ], max_tokens=800, temperature=0.3)
+        
+        answer_parts = []
+        for delta in deltas:
+            answer_parts.append(delta)
+            yield sse_event({"delta": delta})
+        
+        answer = "".join(answer_parts)
+        source = "www.usindh.edu.pk" if "usindh" in answer.lower() else None
+        yield sse_event({"done": True, "success": True, "source": source, "language": user_language})
+        
+    except Exception as e:
+        yield sse_event({"done": True, "success": False, "language": user_language, "error": str(e)})
+
 @app.get("/")
 def read_root():
     return {"message": "UoS Sindh Bot API is running", "status": "active"}
@@ -659,11 +780,40 @@ def verify_auth(credentials: HTTPAuthorizationCredentials = Depends(security)):
 def ask_question(request: QuestionRequest):
     """Handle question from Android app"""
     try:
-        result = get_uos_answer(request.question, request.language)
+        result = get_uos_answer(request.question, request.language, request.segments)
         return QuestionResponse(**result)
     except Exception as e:
         raise HTTPException(status_code=500, detail=str(e))
 
+def answer_or_error(request: QuestionRequest) -> QuestionResponse:
+    try:
+        return QuestionResponse(**get_uos_answer(request.question, request.language, request.segments))
+    except Exception as e:
+        # /api/ask turns this into a 500 the app retries; keep it retryable inside a batch too
+        return QuestionResponse(answer="", language=request.language, success=False, error=str(e), retryable=True)
+
+@app.post("/api/ask/batch", response_model=BatchQuestionResponse)
+def ask_question_batch(request: BatchQuestionRequest):
+    """Answer several queued questions in one round trip; a failed question doesn't fail the others"""
+    if len(request.questions) > MAX_BATCH_SIZE:
+        raise HTTPException(
+            status_code=status.HTTP_413_REQUEST_ENTITY_TOO_LARGE,
+            detail=f"At most {MAX_BATCH_SIZE} questions per batch"
+        )
+    # The OpenAI calls are independent, run them side by side; map keeps request order
+    with ThreadPoolExecutor(max_workers=4) as pool:
+        answers = list(pool.map(answer_or_error, request.questions))
+    return BatchQuestionResponse(answers=answers)
+
+@app.post("/api/ask/stream")
+def ask_question_stream(request: QuestionRequest):
+    """Stream the answer as Server-Sent Events so the app can render tokens as they arrive"""
+    return StreamingResponse(
+        stream_uos_answer(request.question, request.language, request.segments),
+        media_type="text/event-stream",
+        headers={"Cache-Control": "no-cache", "X-Accel-Buffering": "no"}
+    )
+
 if __name__ == "__main__":
     import uvicorn
     import sys
@@ -0,0 +1,73 @@
+"""
+Builds the character-trigram model used by the app's NgramLanguageClassifier.
+
+    python build_language_model.py
+
+Reads corpus/<code>.txt for every language in LANGUAGES and writes
+app/src/main/resources/com/uos/sindhbot/utils/language_trigrams.bin.
+Text normalization and trigram hashing must stay identical to the Java side.
+"""
+import math
+import struct
+import unicodedata
+from pathlib import Path
+
+# Order matters, it is the index order the app reads the table in
+LANGUAGES = ["en", "ur", "sd", "ur-Latn", "sd-Latn"]
+
+MAGIC = 0x4C4E4731  # "LNG1"
+BUCKET_BITS = 12
+SCALE = 16          # quantization steps per nat
+SMOOTHING = 0.5
+
+ROOT = Path(__file__).resolve().parent
+OUTPUT = ROOT.parents[1] / "app/src/main/resources/com/uos/sindhbot/utils/language_trigrams.bin"
+
+
+def normalize(text):
+    """Lowercased letters; marks dropped, everything else collapses to single spaces"""
+    out = [" "]
+    for c in text:
+        if unicodedata.category(c) == "Mn":
+            continue
+        if c.isalpha():
+            out.append(c.lower())
+        elif out[-1] != " ":
+            out.append(" ")
+    if out[-1] != " ":
+        out.append(" ")
+    return "".join(out)
+
+
+def bucket(a, b, c):
+    return ((ord(a) * 31 + ord(b)) * 31 + ord(c)) & ((1 << BUCKET_BITS) - 1)
+
+
+def build_costs(text):
+    buckets = 1 << BUCKET_BITS
+    counts = [0] * buckets
+    norm = normalize(text)
+    for i in range(len(norm) - 2):
+        counts[bucket(norm[i], norm[i + 1], norm[i + 2])] += 1
+    total = sum(counts)
+    costs = bytearray(buckets)
+    for i, count in enumerate(counts):
+        p = (count + SMOOTHING) / (total + SMOOTHING * buckets)
+        costs[i] = min(255, round(-math.log(p) * SCALE))
+    return costs
+
+
+def main():
+    with open(OUTPUT, "wb") as out:
+        out.write(struct.pack(">iiii", MAGIC, len(LANGUAGES), BUCKET_BITS, SCALE))
+        for code in LANGUAGES:
+            encoded = code.encode("utf-8")
+            out.write(struct.pack(">H", len(encoded)) + encoded)
+        for code in LANGUAGES:
+            text = (ROOT / "corpus" / f"{code}.txt").read_text(encoding="utf-8")
+            out.write(build_costs(text))
+    print(f"Wrote {OUTPUT}")
+
+
+if __name__ == "__main__":
+    main()
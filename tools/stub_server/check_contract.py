@@ -0,0 +1,98 @@
+"""
+Checks the /api/ask/batch and /api/ask/stream wire contracts the app relies on, against the
+stub or a real server.
+
+    python check_contract.py [http://localhost:8000]
+
+Sends the JSON the app's BatchRequest serializes to and checks that the reply has one
+answer per question, in order, with the fields ApiResponse reads. Exits non-zero on a
+mismatch. A 404 is reported as "no batch endpoint", which the app handles by falling back.
+The stream check reads the SSE events the way AnswerStream does: delta events, then one
+done event; a stream that closes before done is reported as truncated.
+"""
+import json
+import sys
+import urllib.error
+import urllib.request
+
+RESPONSE_FIELDS = {"answer": str, "language": str, "success": bool}
+
+
+def post(base, path, payload):
+    request = urllib.request.Request(base.rstrip("/") + path, data=json.dumps(payload).encode("utf-8"),
+                                     headers={"Content-Type": "application/json"})
+    try:
+        with urllib.request.urlopen(request, timeout=120) as response:
+            return response.status, json.loads(response.read())
+    except urllib.error.HTTPError as e:
+        return e.code, None
+
+
+def check_answer(answer, question):
+    for field, kind in RESPONSE_FIELDS.items():
+        assert isinstance(answer.get(field), kind), f"{field} missing or not {kind.__name__}: {answer}"
+    assert answer["language"] == question["language"], f"language mismatch: {answer}"
+
+
+def check_stream(base, question):
+    request = urllib.request.Request(base.rstrip("/") + "/api/ask/stream",
+                                     data=json.dumps(question).encode("utf-8"),
+                                     headers={"Content-Type": "application/json"})
+    try:
+        response = urllib.request.urlopen(request, timeout=120)
+    except urllib.error.HTTPError as e:
+        if e.code == 404:
+            print("no stream endpoint (404), the app falls back to /api/ask")
+            return
+        raise AssertionError(f"/api/ask/stream returned {e.code}")
+    deltas = []
+    with response:
+        for raw in response:
+            line = raw.decode("utf-8").rstrip("\r\n")
+            if not line.startswith("data:"):
+                continue
+            event = json.loads(line[len("data:"):].strip())
+            if event.get("done"):
+                assert event.get("success") is True, f"stream failed: {event}"
+                assert event.get("language") == question["language"], f"language mismatch: {event}"
+                assert deltas, "done event without any delta"
+                print(f"stream contract ok ({len(deltas)} deltas, {len(''.join(deltas))} chars)")
+                return
+            assert isinstance(event.get("delta"), str), f"delta missing: {event}"
+            deltas.append(event["delta"])
+    print(f"stream truncated after {len(deltas)} deltas, the app reports a failure")
+
+
+def main():
+    base = sys.argv[1] if len(sys.argv) > 1 else "http://localhost:8000"
+    questions = [
+        {"question": "What are the admission requirements?", "language": "en", "segments": None},
+        {"question": "داخلا جي merit list ڪڏهن ايندي؟", "language": "sd",
+         "segments": [{"text": "داخلا جي ", "language": "sd"}, {"text": "merit list", "language": "en"},
+                      {"text": " ڪڏهن ايندي؟", "language": "sd"}]},
+        {"question": "fee kitni hai", "language": "ur-Latn"},
+    ]
+
+    check_stream(base, questions[0])
+
+    code, body = post(base, "/api/ask/batch", {"questions": questions})
+    if code == 404:
+        print("no batch endpoint (404), the app falls back to /api/ask")
+        code, body = post(base, "/api/ask", questions[0])
+        assert code == 200, f"/api/ask returned {code}"
+        check_answer(body, questions[0])
+        print("single /api/ask ok")
+        return
+    assert code == 200, f"/api/ask/batch returned {code}"
+    answers = body.get("answers")
+    assert isinstance(answers, list) and len(answers) == len(questions), f"expected {len(questions)} answers: {body}"
+    for answer, question in zip(answers, questions):
+        check_answer(answer, question)
+
+    code, _ = post(base, "/api/ask/batch", {"questions": [questions[0]] * 11})
+    assert code == 413, f"oversized batch returned {code}, expected 413"
+    print(f"batch contract ok ({len(answers)} answers in order, oversized batch rejected)")
+
+
+if __name__ == "__main__":
+    main()
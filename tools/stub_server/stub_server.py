@@ -0,0 +1,134 @@
+"""
+Local stand-in for the backend's question endpoints, for exercising the app's networking
+(batching, fallback, outbox replay) without OpenAI or a Render deployment.
+
+    python stub_server.py [--port 8000] [--no-batch] [--no-stream] [--truncate-stream] [--delay 0.5]
+
+Point the app at it with ApiClient.setBaseUrl("http://10.0.2.2:8000/") on the emulator.
+--no-batch answers /api/ask/batch with 404 like a server from before the endpoint existed.
+/api/ask/stream sends the answer as a few SSE delta events and then a done event;
+--no-stream answers it with 404 instead, and --truncate-stream closes the connection
+before the done event, like a dropped mobile connection.
+Request and response fields match backend/main.py (QuestionRequest, QuestionResponse,
+BatchQuestionRequest, BatchQuestionResponse).
+"""
+import argparse
+import json
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+MAX_BATCH_SIZE = 10
+# Pause between streamed deltas, so the app visibly renders them one by one
+STREAM_DELTA_DELAY = 0.2
+
+
+def answer(question):
+    text = question.get("question")
+    if not isinstance(text, str):
+        raise ValueError("question must be a string")
+    return {
+        "answer": "Stub answer to: " + text,
+        "source": None,
+        "language": question.get("language", "en"),
+        "success": True,
+        "error": None,
+        "retryable": False,
+    }
+
+
+def stream_deltas(text):
+    """Split an answer into word-sized deltas that concatenate back to the text"""
+    words = text.split(" ")
+    return [word if i == 0 else " " + word for i, word in enumerate(words)]
+
+
+class Handler(BaseHTTPRequestHandler):
+    batch_enabled = True
+    stream_enabled = True
+    truncate_stream = False
+    delay = 0.0
+
+    def do_GET(self):
+        if self.path == "/":
+            self.send_json(200, {"message": "UoS Sindh Bot stub is running", "status": "active"})
+        else:
+            self.send_json(404, {"detail": "Not Found"})
+
+    def do_POST(self):
+        length = int(self.headers.get("Content-Length", 0))
+        try:
+            body = json.loads(self.rfile.read(length) or b"{}")
+        except ValueError:
+            self.send_json(422, {"detail": "Invalid JSON"})
+            return
+        time.sleep(self.delay)
+
+        try:
+            if self.path == "/api/ask":
+                self.send_json(200, answer(body))
+            elif self.path == "/api/ask/stream" and self.stream_enabled:
+                self.send_stream(answer(body))
+            elif self.path == "/api/ask/batch" and self.batch_enabled:
+                questions = body.get("questions")
+                if not isinstance(questions, list):
+                    self.send_json(422, {"detail": "questions must be a list"})
+                elif len(questions) > MAX_BATCH_SIZE:
+                    self.send_json(413, {"detail": f"At most {MAX_BATCH_SIZE} questions per batch"})
+                else:
+                    self.send_json(200, {"answers": [answer(q) for q in questions]})
+            else:
+                self.send_json(404, {"detail": "Not Found"})
+        except ValueError as e:
+            self.send_json(422, {"detail": str(e)})
+
+    def send_stream(self, reply):
+        # No Content-Length: the stream ends when the connection closes (HTTP/1.0)
+        self.send_response(200)
+        self.send_header("Content-Type", "text/event-stream")
+        self.send_header("Cache-Control", "no-cache")
+        self.end_headers()
+        deltas = stream_deltas(reply["answer"])
+        if self.truncate_stream:
+            deltas = deltas[:len(deltas) // 2 or 1]
+        for delta in deltas:
+            self.send_event({"delta": delta})
+            time.sleep(STREAM_DELTA_DELAY)
+        if not self.truncate_stream:
+            self.send_event({"done": True, "success": True, "source": reply["source"],
+                             "language": reply["language"]})
+
+    def send_event(self, payload):
+        self.wfile.write(b"data: " + json.dumps(payload, ensure_ascii=False).encode("utf-8") + b"\n\n")
+        self.wfile.flush()
+
+    def send_json(self, code, payload):
+        data = json.dumps(payload, ensure_ascii=False).encode("utf-8")
+        self.send_response(code)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(data)))
+        self.end_headers()
+        self.wfile.write(data)
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--port", type=int, default=8000)
+    parser.add_argument("--no-batch", action="store_true")
+    parser.add_argument("--no-stream", action="store_true")
+    parser.add_argument("--truncate-stream", action="store_true", help="drop the connection before the done event")
+    parser.add_argument("--delay", type=float, default=0.0, help="seconds to wait before answering")
+    args = parser.parse_args()
+
+    Handler.batch_enabled = not args.no_batch
+    Handler.stream_enabled = not args.no_stream
+    Handler.truncate_stream = args.truncate_stream
+    Handler.delay = args.delay
+    server = ThreadingHTTPServer(("0.0.0.0", args.port), Handler)
+    stream_mode = "truncated" if Handler.truncate_stream else "on" if Handler.stream_enabled else "off"
+    print(f"Stub backend on port {args.port}, batch endpoint {'on' if Handler.batch_enabled else 'off'}, "
+          f"stream {stream_mode}")
+    server.serve_forever()
+
+
+if __name__ == "__main__":
+    main()